@@ -6,20 +6,50 @@ import java.awt.*;
 import java.awt.event.*;
 //Import necessary Java IO packages for file input/output operations (saving and loading scores).
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 //Import necessary Java Time package for handling dates (specifically, the date of a score entry).
 import java.time.LocalDate;
 //Import necessary Java Util packages for data structures (Lists, Maps, Sets, etc.) and streams.
 import java.util.*;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
 * LeaderboardAppSwing is a Java Swing application that provides a graphical user interface
 * for managing and displaying leaderboard scores for various games and players.
 * It allows users to submit scores, filter scores by game, search for player scores,
 * modify existing scores, and delete scores or entire player/game data.
-* Data is persisted to a text file ("scores.txt").
+* Data is persisted to per-game snapshot files (folder "scores.d") plus an append-only change log ("scores.log").
 */
 public class LeaderboardAppSwing {
 
@@ -39,18 +69,11 @@ public class LeaderboardAppSwing {
  // --- Core Data Structures ---
  // These data structures are used to store and manage the leaderboard data internally.
 
- // A custom linked list to store ScoreEntry objects.
- // While present, its direct usage for main data manipulation is often superseded by scoreMap,
- // but it's used, for example, as an intermediate step in refreshLeaderboard.
- private ScoreLinkedList scores = new ScoreLinkedList();
-
- // A Binary Search Tree to store ScoreEntry objects, potentially for efficient searching or sorting by name.
- // It is maintained alongside scoreMap.
- private final ScoreBST scoreTree = new ScoreBST();
-
- // A HashMap to store ScoreEntry objects, using a composite key (player name + game name) for quick lookups.
- // This is the primary data structure for managing unique scores and current score values.
- private final HashMap<String, ScoreEntry> scoreMap = new HashMap<>();
+ // A column store of all loaded scores, keyed by composite key (player id + game id, see ScoreEntry.key()) for quick lookups.
+ // This is the primary data structure for managing unique scores and current score values. It keeps no object per
+ // entry: the ScoreEntry objects it returns are copies, so a changed entry is written back with put().
+ // With "leaderboard.offHeap=true" its columns are kept off the heap (see ScoreColumns); its indexes stay on the heap.
+ private final ScoreTable scoreMap = new ScoreTable(ScoreColumns.create(16));
 
  // A Queue to hold ScoreEntry objects that are pending processing.
  // In the current implementation, it's flushed immediately after adding an entry.
@@ -64,6 +87,65 @@ public class LeaderboardAppSwing {
  // Used to populate game name input and filter combo boxes.
  private final HashSet<String> uniqueGameNames = new HashSet<>();
 
+ // Number of entries each player has across all games, including games that are not loaded (see GameResidency).
+ // Lets deletions tell whether a player still has scores without scanning every entry.
+ private final HashMap<String, Integer> playerEntryCounts = new HashMap<>();
+
+ // Which games' entries are in scoreMap when games are loaded on demand.
+ private final GameResidency residency = new GameResidency();
+
+ // Index sidecars of games that are not loaded, opened on first use (lazy loading with "leaderboard.shardIndex").
+ // They answer player searches without reading the games' shards into memory.
+ private final HashMap<String, ShardIndex> shardIndexes = new HashMap<>();
+
+ // True while updateGameFilterComboBox() rebuilds the filter's items, so the intermediate selections
+ // it goes through do not each refresh (and, with lazy loading, load) the leaderboard.
+ private boolean rebuildingGameFilter = false;
+
+ // --- Persistence ---
+
+ // Legacy single-file snapshot of all scores (one comma-separated line per entry); migrated into SHARD_DIRECTORY_NAME.
+ private static final String SCORES_FILE_NAME = "scores.txt";
+
+ // Legacy single-file snapshot in the binary format (see BinaryScoreFile); migrated into SHARD_DIRECTORY_NAME.
+ private static final String BINARY_SCORES_FILE_NAME = "scores.dat";
+
+ // Folder holding the snapshot as one file per game plus a manifest (see ShardedSnapshot).
+ private static final String SHARD_DIRECTORY_NAME = "scores.d";
+
+ // Format used when a new shard is written: "text" (*.txt, the default) or "binary" (*.dat).
+ private static final SnapshotFormat SNAPSHOT_FORMAT = SnapshotFormat.fromSetting(System.getProperty("leaderboard.snapshotFormat", "text"));
+
+ // Compression applied to new shards: "none" (the default) or "deflate" (see CompressedSnapshot).
+ private static final boolean COMPRESS_SNAPSHOTS = "deflate".equalsIgnoreCase(System.getProperty("leaderboard.snapshotCompression", "none"));
+
+ // The per-game snapshot the mutation log is replayed on top of.
+ private final ShardedSnapshot snapshot = new ShardedSnapshot(new File(SHARD_DIRECTORY_NAME), SNAPSHOT_FORMAT, COMPRESS_SNAPSHOTS);
+
+ // File holding the append-only log of every put/delete made since the snapshot was written.
+ private static final String SCORE_LOG_FILE_NAME = "scores.log";
+
+ // A log segment that has been closed and is waiting to be folded into the snapshot by the compactor.
+ private static final String SEALED_LOG_FILE_NAME = "scores.log.sealed";
+
+ // Folds sealed log segments into a new snapshot on a background thread.
+ private final ScoreCompactor compactor = new ScoreCompactor(snapshot, new File(SEALED_LOG_FILE_NAME));
+
+ // The storage engine selected with "leaderboard.store", or null for the default sharded snapshot and mutation log.
+ // Opened by loadScores(); see ScoreStore for the available engines.
+ private ScoreStore store;
+ // Guards the store: it is used on the event thread and closed by the window or, on a kill, the shutdown hook.
+ private final Object storeLock = new Object();
+ private boolean storeClosed;      // Set once the store has been closed; later changes are not persisted.
+ private boolean storeSyncPending; // A sync of the store is queued to run after the current event.
+
+ // Writes mutations to the log on a background thread, coalescing bursts into one write.
+ // Null if the log could not be opened on startup (mutations are then not persisted this session).
+ private WriteBehindPersister persister;
+
+ // Shows how many mutations are still waiting to be written.
+ private JLabel pendingSavesLabel;
+
  // Static string holding the welcome message and instructions for the application.
  // This text is displayed in a dialog when the "Help/Instructions" button is clicked.
  private static final String INSTRUCTION_TEXT = "Welcome to the Leaderboard System!\n\n" +
@@ -86,7 +168,8 @@ public class LeaderboardAppSwing {
          "   - Enter or select a player's name in the 'Player Name:' input at the top.\n" +
          "   - Then, click the 'Search Player Name' button located in the bottom operations panel.\n" +
          "   - The list will display all scores for that player across all games.\n" +
-         "   - To return to the normal filtered view, change the 'Filter by Game:' selection.\n\n" +
+         "   - To return to the normal filtered view, change the 'Filter by Game:' selection.\n" +
+         "   - 'Show My Rank' shows the player's rank (the name is matched case-insensitively) in the game entered in 'Game Name:' (or the game selected in 'Filter by Game:') with the players just above and below, and selects the player's row in that game's leaderboard. Players with the same score and date share a rank.\n\n" +
          "5. Modifying Entries & Deleting Scores (actions in the bottom panel, unless specified otherwise):\n" +
          "   - Delete Selected Player Score: Select one or more entries from the list and click this button.\n" +
          "   - Set Selected Player Score To 0: Select one or more entries from the list and click this button.\n" +
@@ -94,8 +177,16 @@ public class LeaderboardAppSwing {
          "   - Quick Point Modifier (single selection): Choose '+/-', select a point amount, and click 'Apply Quick'.\n" +
          "   - Score Validation: If any point modification results in a score below zero, it will be automatically set to 0 with a warning.\n\n" +
          "6. Data Persistence:\n" +
-         "   - All scores and changes are automatically saved to 'scores.txt'.\n\n" +
-         "7. Help:\n" +
+         "   - All scores and changes are automatically saved to the 'scores.d' folder (one file per game) and the change log 'scores.log'.\n" +
+         "   - Saving happens in the background a moment after each change; the 'Unsaved changes' counter at the bottom shows what is still waiting.\n\n" +
+         "7. Importing Scores:\n" +
+         "   - Click 'Import Scores...' at the bottom and choose a file with one 'name,score,date,game' line per score (date as yyyy-mm-dd).\n" +
+         "   - Each line is handled like 'Submit Score': new scores are added, existing ones updated if the score differs. Malformed lines (such as a header) are skipped.\n" +
+         "   - The file is read in the background; the leaderboard is refreshed once the import finishes, and a summary shows how many rows were imported.\n\n" +
+         "8. Exporting Scores:\n" +
+         "   - Click 'Export Scores...' at the bottom, choose all games, the game selected in 'Filter by Game:' or the player in the 'Player Name:' field, an optional Top N, and CSV or JSON.\n" +
+         "   - Scores are written in leaderboard order.\n\n" +
+         "9. Help:\n" +
          "   - Click the 'Help/Instructions' button at the bottom of the window to see these instructions again.\n\n" +
          "Enjoy using the Leaderboard System!";
 
@@ -104,9 +195,28 @@ public class LeaderboardAppSwing {
   * It uses SwingUtilities.invokeLater to ensure that the GUI creation and manipulation
   * are done on the Event Dispatch Thread (EDT), which is crucial for Swing applications
   * to prevent threading issues.
-  * @param args Command-line arguments (not used in this application).
+  * The only command-line arguments are the snapshot conversion utilities:
+  * "--to-binary in out.dat", "--to-text in out.txt" and "--compress in out.z" (any snapshot file as input;
+  * "--compress" keeps the configured snapshot format inside the compressed file). Without arguments the GUI starts.
+  * @param args Command-line arguments.
   */
  public static void main(String[] args) {
+     if (args.length == 3 && ("--to-binary".equals(args[0]) || "--to-text".equals(args[0]) || "--compress".equals(args[0]))) {
+         try {
+             if ("--to-binary".equals(args[0])) {
+                 BinaryScoreFile.convertFromText(new File(args[1]), new File(args[2]));
+             } else if ("--to-text".equals(args[0])) {
+                 BinaryScoreFile.convertToText(new File(args[1]), new File(args[2]));
+             } else {
+                 CompressedSnapshot.convert(new File(args[1]), new File(args[2]), SNAPSHOT_FORMAT);
+             }
+             System.out.println("Converted " + args[1] + " to " + args[2]);
+         } catch (IOException e) {
+             System.err.println("Conversion failed: " + e.getMessage());
+             System.exit(1);
+         }
+         return;
+     }
      // Schedule a job for the event dispatch thread:
      // creating and showing this application's GUI.
      SwingUtilities.invokeLater(() -> new LeaderboardAppSwing().createAndShowGUI());
@@ -146,6 +256,13 @@ public class LeaderboardAppSwing {
      // --- Frame Setup ---
      frame = new JFrame("Leaderboard System"); // Create the main application window with a title.
      frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Ensure the application exits when the window is closed.
+     // Close a selected storage engine on the event thread, before the application exits.
+     frame.addWindowListener(new WindowAdapter() {
+         @Override
+         public void windowClosing(WindowEvent e) {
+             closeStore();
+         }
+     });
      frame.setSize(950, 600); // Set the initial size of the window.
 
      // --- UI Component Initialization ---
@@ -172,6 +289,7 @@ public class LeaderboardAppSwing {
      // Buttons for various actions within the application.
      JButton submitButton = new JButton("Submit Score"); // Submits a new score.
      JButton searchPlayerButton = new JButton("Search Player Name"); // Searches for scores of a specific player.
+     JButton showRankButton = new JButton("Show My Rank"); // Shows and selects a player's place in a game's leaderboard.
      JButton deletePlayerScoreButton = new JButton("Delete Selected Player Score"); // Deletes selected score(s) from the list.
      JButton submitPlayerButton = new JButton("Submit Player"); // Button to add a player name to the known list.
      JButton deletePlayerByNameButton = new JButton("Delete This Player's Data"); // Deletes all data for a player specified in playerNameInputComboBox.
@@ -180,6 +298,8 @@ public class LeaderboardAppSwing {
      JButton enterGameButton = new JButton("Submit Game"); // Adds a new game category.
      JButton deleteGameCategoryButton = new JButton("Delete Selected Game"); // Deletes a selected game category and its scores.
      JButton showInstructionsButton = new JButton("Help/Instructions"); // Shows the help dialog.
+     JButton importScoresButton = new JButton("Import Scores..."); // Bulk-imports a score file.
+     JButton exportScoresButton = new JButton("Export Scores..."); // Exports a leaderboard view to CSV or JSON.
 
      // Quick Point Modifier Components:
      JLabel quickModifyLabel = new JLabel("Quick Point Modifier:"); // Label for the quick modifier section.
@@ -194,7 +314,9 @@ public class LeaderboardAppSwing {
      gameFilterComboBox = new JComboBox<>();
      gameFilterComboBox.addItem("All Games"); // Default option to show scores from all games.
      // Action listener to refresh the leaderboard when the filter selection changes.
-     gameFilterComboBox.addActionListener(e -> refreshLeaderboard());
+     gameFilterComboBox.addActionListener(e -> {
+         if (!rebuildingGameFilter) refreshLeaderboard();
+     });
 
      // --- Panel Setup and Layout ---
      // Panels are used to organize components within the frame.
@@ -227,6 +349,7 @@ public class LeaderboardAppSwing {
      // Operations Panel (Part of Bottom Panel): Contains buttons for operations on selected scores or player searches.
      JPanel operationsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
      operationsPanel.add(searchPlayerButton);
+     operationsPanel.add(showRankButton);
      // --- MODIFIED --- Add spacer between "Search Player Name" and "Delete Selected Player Score"
      JLabel spacerOps1 = new JLabel();
      spacerOps1.setPreferredSize(new Dimension(10, 1));
@@ -254,6 +377,10 @@ public class LeaderboardAppSwing {
 
      // Help Panel (Part of Bottom Panel): Contains the help button.
      JPanel helpPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT)); // Aligns the help button to the right.
+     pendingSavesLabel = new JLabel("Unsaved changes: 0"); // Number of mutations not yet written to disk.
+     helpPanel.add(importScoresButton);
+     helpPanel.add(exportScoresButton);
+     helpPanel.add(pendingSavesLabel);
      helpPanel.add(showInstructionsButton);
 
      // South Container Panel: Groups the operationsPanel and helpPanel at the bottom of the frame.
@@ -419,30 +546,27 @@ public class LeaderboardAppSwing {
              return; // Stop if user cancels.
          }
 
-         // Find all scoreMap keys corresponding to the game to be deleted.
-         List<String> keysToRemove = scoreMap.entrySet().stream()
-                                    .filter(entry -> entry.getValue().getGameName().equals(gameToDelete))
-                                    .map(Map.Entry::getKey)
-                                    .collect(Collectors.toList());
-         boolean actuallyRemovedScores = !keysToRemove.isEmpty(); // Check if any scores were associated with this game.
-
+         // Find all scoreMap keys corresponding to the game to be deleted (its shard may not be loaded yet).
+         ensureGamesLoaded(Collections.singleton(gameToDelete));
          // Remove these entries from the scoreMap.
-         keysToRemove.forEach(scoreMap::remove);
+         int gameIdToDelete = ScoreEntry.GAME_NAMES.find(gameToDelete);
+         List<ScoreEntry> removedEntries = scoreMap.removeRows(row -> scoreMap.gameId(row) == gameIdToDelete);
+         boolean actuallyRemovedScores = !removedEntries.isEmpty(); // Check if any scores were associated with this game.
+         for (ScoreEntry removedEntry : removedEntries) {
+             playerEntryCounts.merge(removedEntry.getName(), -1, Integer::sum);
+         }
+         // One drop record covers the whole game; compaction then deletes the game's shard file.
+         if (actuallyRemovedScores) {
+             persistDropGame(gameToDelete);
+         }
          // Remove the game from the set of unique game names.
          boolean removedFromUnique = uniqueGameNames.remove(gameToDelete);
 
          // If any scores were removed or the game was removed from the unique list:
          if (actuallyRemovedScores || removedFromUnique) {
-             // Rebuild the 'scores' linked list and 'scoreTree' from the updated scoreMap.
-             scores.clear();
-             scores.addAll(scoreMap.values());
-             scoreTree.clear();
-             scoreMap.values().forEach(scoreTree::insert);
-
              // Update the UI components related to game names.
              updateGameFilterComboBox();
              updateGameInputComboBoxModel();
-             saveScores(); // Persist changes to file.
              refreshLeaderboard(); // Update the displayed list.
              JOptionPane.showMessageDialog(frame, "Game category '" + gameToDelete + "' deleted.", "Deleted", JOptionPane.INFORMATION_MESSAGE);
          } else {
@@ -478,34 +602,26 @@ public class LeaderboardAppSwing {
 
          // Perform the deletion of all data for the specified player.
          // The performPlayerDataDeletion method handles removal from scoreMap and uniquePlayerNames.
-         boolean overallDataChanged = performPlayerDataDeletion(Collections.singleton(playerNameToDelete));
+         HashSet<String> affectedGames = performPlayerDataDeletion(Collections.singleton(playerNameToDelete));
 
-         if (overallDataChanged) {
+         if (!affectedGames.isEmpty()) {
              // If data was actually changed (scores were deleted):
-             // Rebuild the auxiliary data structures (scores list and score tree) from the updated scoreMap.
-             scores.clear();
-             scores.addAll(scoreMap.values());
-             scoreTree.clear();
-             scoreMap.values().forEach(scoreTree::insert);
-
              // Update the player name input combo box model as the player might no longer exist.
              updatePlayerNameInputComboBoxModel();
 
-             // Check if any game categories became empty and need to be removed from game combo boxes.
-             HashSet<String> gamesStillPresent = scoreMap.values().stream()
-                                                .map(ScoreEntry::getGameName)
-                                                .collect(Collectors.toCollection(HashSet::new));
-             boolean gameListNeedsUpdate = uniqueGameNames.size() != gamesStillPresent.size() ||
-                                          !uniqueGameNames.containsAll(gamesStillPresent);
+             // Only the games the player had scores in can have become empty; remove those from the game combo boxes.
+             boolean gameListNeedsUpdate = false;
+             for (String gameName : affectedGames) {
+                 if (!scoreMap.containsGame(ScoreEntry.GAME_NAMES.find(gameName)) && uniqueGameNames.remove(gameName)) {
+                     gameListNeedsUpdate = true;
+                 }
+             }
 
              if(gameListNeedsUpdate){
-                  uniqueGameNames.clear();
-                  uniqueGameNames.addAll(gamesStillPresent);
                   updateGameFilterComboBox(); // Update game filter combo box.
                   updateGameInputComboBoxModel(); // Update game input combo box.
              }
 
-             saveScores(); // Persist changes.
              refreshLeaderboard(); // Update the displayed list.
              JOptionPane.showMessageDialog(frame, "All scores for player '" + playerNameToDelete + "' have been deleted.", "Player Data Deleted", JOptionPane.INFORMATION_MESSAGE);
          } else {
@@ -521,9 +637,122 @@ public class LeaderboardAppSwing {
          setComboBoxText(playerNameInputComboBox, "");
      });
 
+     // Action Listener for 'Import Scores...' button.
+     importScoresButton.addActionListener(e -> {
+         // Let the user pick the file to import.
+         JFileChooser chooser = new JFileChooser(new File("."));
+         chooser.setDialogTitle("Import Scores (one name,score,date,game line per score)");
+         if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+             return; // Stop if user cancels.
+         }
+         File importFile = chooser.getSelectedFile();
+
+         // Confirm the import.
+         int confirmation = JOptionPane.showConfirmDialog(frame, "Import every score in '" + importFile.getName() + "'?\nExisting scores for the same player and game are updated when the score differs.", "Confirm Import", JOptionPane.YES_NO_OPTION);
+         if (confirmation != JOptionPane.YES_OPTION) {
+             return; // Stop if user cancels.
+         }
+
+         // One import at a time; the button is enabled again when it finishes.
+         importScoresButton.setEnabled(false);
+         importScores(importFile, () -> importScoresButton.setEnabled(true));
+     });
+
+     // Action Listener for 'Export Scores...' button.
+     exportScoresButton.addActionListener(e -> {
+         // Ask what to export: which entries, how many and in which format.
+         String selectedGame = (String) gameFilterComboBox.getSelectedItem();
+         String playerName = getComboBoxText(playerNameInputComboBox);
+         JComboBox<String> viewComboBox = new JComboBox<>(new String[]{"All Games", "Selected game (Filter by Game)", "Player (Player Name field)"});
+         JTextField limitField = new JTextField("0", 6);
+         JComboBox<ScoreExporter.Format> formatComboBox = new JComboBox<>(ScoreExporter.Format.values());
+         JPanel exportPanel = new JPanel(new GridLayout(0, 2, 5, 5));
+         exportPanel.add(new JLabel("Scores:"));
+         exportPanel.add(viewComboBox);
+         exportPanel.add(new JLabel("Top N (0 = all):"));
+         exportPanel.add(limitField);
+         exportPanel.add(new JLabel("Format:"));
+         exportPanel.add(formatComboBox);
+         if (JOptionPane.showConfirmDialog(frame, exportPanel, "Export Scores", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+             return; // Stop if user cancels.
+         }
+
+         // Validate the choices.
+         long limit;
+         try {
+             limit = Long.parseLong(limitField.getText().trim());
+         } catch (NumberFormatException ex) {
+             showError("Invalid Top N. Please enter a whole number (0 for all scores).");
+             return;
+         }
+         if (limit < 0) {
+             showError("Top N cannot be negative.");
+             return;
+         }
+         int view = viewComboBox.getSelectedIndex();
+         if (view == 1 && (selectedGame == null || "All Games".equals(selectedGame))) {
+             showError("Select a specific game in 'Filter by Game' to export it.");
+             return;
+         }
+         if (view == 2 && playerName.isEmpty()) {
+             showError("Enter or select a player name in the 'Player Name' input field to export their scores.");
+             return;
+         }
+
+         // Choose the file.
+         ScoreExporter.Format format = (ScoreExporter.Format) formatComboBox.getSelectedItem();
+         JFileChooser chooser = new JFileChooser(new File("."));
+         chooser.setDialogTitle("Export Scores");
+         chooser.setSelectedFile(new File("leaderboard" + format.getExtension()));
+         if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+             return; // Stop if user cancels.
+         }
+         File exportFile = chooser.getSelectedFile();
+         if (exportFile.exists()) {
+             int confirmation = JOptionPane.showConfirmDialog(frame, "Replace '" + exportFile.getName() + "'?", "Confirm Export", JOptionPane.YES_NO_OPTION);
+             if (confirmation != JOptionPane.YES_OPTION) {
+                 return; // Stop if user cancels.
+             }
+         }
+
+         // Take a copy of the scores on this thread; the file is written in the background.
+         Iterable<ScoreEntry> snapshot;
+         if (view == 1 && limit > 0) {
+             snapshot = topK(selectedGame, (int) Math.min(limit, Integer.MAX_VALUE)); // The top N of the game.
+         } else if (view == 1) {
+             ensureGamesLoaded(Collections.singleton(selectedGame));
+             snapshot = scoreMap.copyRows(scoreMap.leaderboardRows(ScoreEntry.GAME_NAMES.find(selectedGame)), 0);
+         } else if (view == 2) {
+             // A player can have scores in any game, so every game must be loaded.
+             ensureGamesLoaded(residency.getUnloadedGames());
+             snapshot = scoreMap.copyRows(scoreMap.playerRows(playerName), limit); // Only the player's rows, from the player index.
+         } else {
+             ensureGamesLoaded(residency.getUnloadedGames());
+             snapshot = scoreMap.copyRows(scoreMap.leaderboardRows(), limit);
+         }
+         // One export at a time; the button is enabled again when it finishes.
+         exportScoresButton.setEnabled(false);
+         exportScores(snapshot, format, exportFile, () -> exportScoresButton.setEnabled(true));
+     });
+
      // Action Listener for 'Help/Instructions' button.
      showInstructionsButton.addActionListener(e -> showInstructionsDialog()); // Calls the method to display the help dialog.
 
+     // Action Listener for 'Show My Rank' button.
+     showRankButton.addActionListener(e -> {
+         // The player from the top input area; the game from the game input, or else the game shown.
+         String playerName = getComboBoxText(playerNameInputComboBox);
+         String gameName = getComboBoxText(gameNameInputComboBox);
+         if (gameName.isEmpty() && !"All Games".equals(gameFilterComboBox.getSelectedItem())) {
+             gameName = (String) gameFilterComboBox.getSelectedItem();
+         }
+         if (playerName.isEmpty() || gameName == null || gameName.isEmpty()) {
+             showError("Enter a player name and a game name (or select the game in 'Filter by Game:') to show a rank.");
+             return;
+         }
+         showRank(playerName, gameName);
+     });
+
      // Action Listener for 'Search Player Name' button.
      searchPlayerButton.addActionListener(e -> {
          // Get the player name to search from the top input area.
@@ -540,10 +769,32 @@ public class LeaderboardAppSwing {
              return; // Stop if user cancels.
          }
 
-         // Filter scoreMap values to find entries matching the player name (case-insensitive).
-         ArrayList<ScoreEntry> searchResults = scoreMap.values().stream()
-             .filter(entry -> entry.getName().equalsIgnoreCase(nameToSearch))
-             .collect(Collectors.toCollection(ArrayList::new));
+         // A player can have scores in any game. Games that are not loaded are asked through their index
+         // where they have one; the others must be loaded.
+         ArrayList<ScoreEntry> searchResults = new ArrayList<>();
+         ArrayList<String> gamesToLoad = new ArrayList<>();
+         for (String gameName : residency.getUnloadedGames()) {
+             ShardIndex index = shardIndexFor(gameName);
+             if (index == null) {
+                 gamesToLoad.add(gameName);
+                 continue;
+             }
+             ArrayList<ScoreEntry> indexed = new ArrayList<>();
+             try {
+                 for (String playerName : index.findPlayers(name -> name.equalsIgnoreCase(nameToSearch))) {
+                     ScoreEntry entry = index.get(playerName);
+                     if (entry != null) indexed.add(entry);
+                 }
+             } catch (IOException ex) {
+                 System.err.println("Could not read the shard of " + gameName + ": " + ex.getMessage());
+                 gamesToLoad.add(gameName); // Answer from the loaded game instead.
+                 continue;
+             }
+             searchResults.addAll(indexed);
+         }
+         ensureGamesLoaded(gamesToLoad);
+         // The loaded entries of the player (case-insensitive), straight from the player index.
+         searchResults.addAll(scoreMap.findAllByPlayer(nameToSearch));
 
          listModel.clear(); // Clear the current display list.
          if (searchResults.isEmpty()) {
@@ -582,11 +833,13 @@ public class LeaderboardAppSwing {
              if ("System Message".equals(entryToDelete.getGameName())) continue;
 
              // Attempt to remove the entry from the scoreMap using its composite key.
-             if (scoreMap.remove(getCompositeKey(entryToDelete.getName(), entryToDelete.getGameName())) != null) {
+             // (A search can list entries of games that are not loaded; load the game first.)
+             ensureGamesLoaded(Collections.singleton(entryToDelete.getGameName()));
+             ScoreEntry removedEntry = scoreMap.remove(entryToDelete.getKey());
+             if (removedEntry != null) {
                  actualDeletionsOccurred = true; // Mark that a deletion occurred.
-                 // Also remove from auxiliary data structures.
-                 scoreTree.delete(entryToDelete.getName());
-                 scores.deleteSpecificEntry(entryToDelete.getName(), entryToDelete.getGameName(), entryToDelete.getScore(), entryToDelete.getDate());
+                 persistDelete(entryToDelete.getName(), entryToDelete.getGameName()); // Log the removal.
+                 playerEntryCounts.merge(entryToDelete.getName(), -1, Integer::sum);
 
                  // Record the affected player and game names.
                  distinctPlayerNamesAffected.add(entryToDelete.getName());
@@ -600,7 +853,7 @@ public class LeaderboardAppSwing {
          // Check if any players need to be removed from uniquePlayerNames (if all their scores are gone).
          boolean playerComboBoxNeedsUpdate = false;
          for (String playerName : distinctPlayerNamesAffected) {
-             boolean playerStillExists = scoreMap.values().stream().anyMatch(entry -> entry.getName().equals(playerName));
+             boolean playerStillExists = playerEntryCounts.getOrDefault(playerName, 0) > 0; // Counts games that are not loaded, too.
              if (!playerStillExists) {
                  if (uniquePlayerNames.remove(playerName)) playerComboBoxNeedsUpdate = true;
              }
@@ -610,7 +863,7 @@ public class LeaderboardAppSwing {
          // Check if any games need to be removed from uniqueGameNames (if all scores for that game are gone).
          boolean gameComboBoxesNeedUpdate = false;
          for (String gameName : distinctGameNamesAffected) {
-             boolean gameStillExists = scoreMap.values().stream().anyMatch(entry -> entry.getGameName().equals(gameName));
+             boolean gameStillExists = scoreMap.containsGame(ScoreEntry.GAME_NAMES.find(gameName));
              if (!gameStillExists) {
                 if (uniqueGameNames.remove(gameName)) gameComboBoxesNeedUpdate = true;
              }
@@ -620,7 +873,6 @@ public class LeaderboardAppSwing {
              updateGameInputComboBoxModel(); // Update game name input dropdown.
          }
 
-         saveScores(); // Persist changes.
          refreshLeaderboard(); // Update the displayed list.
      });
 
@@ -647,18 +899,20 @@ public class LeaderboardAppSwing {
          // Iterate over selected entries.
          for(ScoreEntry selectedEntry : selectedEntries){
              if ("System Message".equals(selectedEntry.getGameName())) continue; // Skip system messages.
-             // Get the corresponding entry from the main scoreMap.
-             ScoreEntry entryInMap = scoreMap.get(getCompositeKey(selectedEntry.getName(), selectedEntry.getGameName()));
+             // Get the corresponding entry from the main scoreMap (loading its game if a search listed it unloaded).
+             ensureGamesLoaded(Collections.singleton(selectedEntry.getGameName()));
+             ScoreEntry entryInMap = scoreMap.get(selectedEntry.getKey());
              // If found and score is not already 0, update it.
              if (entryInMap != null && entryInMap.score != 0) {
                  entryInMap.score = 0; // Set score to 0.
-                 entryInMap.date = LocalDate.now(); // Update the date to reflect modification time.
+                 entryInMap.epochDay = ScoreEntry.today(); // Update the date to reflect modification time.
+                 scoreMap.put(entryInMap.getKey(), entryInMap); // Write the change back (the map returns copies).
+                 persistPut(entryInMap); // Log only this entry's new value.
                  dataChanged = true; // Mark that data has changed.
              }
          }
-         // If data changed, save and refresh.
+         // If data changed, refresh.
          if(dataChanged){
-             saveScores();
              refreshLeaderboard();
          }
      });
@@ -699,8 +953,9 @@ public class LeaderboardAppSwing {
              return; // Stop if user cancels.
          }
 
-         // Get the actual entry from scoreMap to modify it.
-         ScoreEntry entryInMap = scoreMap.get(getCompositeKey(selectedEntry.getName(), selectedEntry.getGameName()));
+         // Get the actual entry from scoreMap to modify it (loading its game if a search listed it unloaded).
+         ensureGamesLoaded(Collections.singleton(selectedEntry.getGameName()));
+         ScoreEntry entryInMap = scoreMap.get(selectedEntry.getKey());
          if (entryInMap == null) {
              showError("Selected entry not found in map."); // Should not happen if list is in sync.
              return;
@@ -713,18 +968,17 @@ public class LeaderboardAppSwing {
              // Ask user how to handle the negative result.
              int choice = JOptionPane.showOptionDialog(frame, "Resulting score (" + potentialNewScore + ") negative.", "Score Warning", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
              if (choice == 0) { // User chose "Set Score to 0".
-                 entryInMap.score = 0;
+                 potentialNewScore = 0;
              } else { // User chose "Re-enter Amount" or closed.
                  modifyPointsField.setText("");
                  modifyPointsField.requestFocus();
                  return;
              }
-         } else {
-             // If not negative, update the score.
-             entryInMap.score = potentialNewScore;
          }
-         entryInMap.date = LocalDate.now(); // Update modification date.
-         saveScores(); // Persist changes.
+         entryInMap.score = potentialNewScore; // Update the score.
+         entryInMap.epochDay = ScoreEntry.today(); // Update modification date.
+         scoreMap.put(entryInMap.getKey(), entryInMap); // Write the change back (the map returns copies).
+         persistPut(entryInMap); // Persist changes.
          refreshLeaderboard(); // Refresh display.
          modifyPointsField.setText(""); // Clear the points field.
      });
@@ -764,6 +1018,9 @@ public class LeaderboardAppSwing {
      loadScores(); // Load scores from file when the application starts.
      refreshLeaderboard(); // Populate the leaderboard display with loaded scores.
 
+     // Keep the unsaved-changes counter current while the background writer catches up.
+     new javax.swing.Timer(250, e -> pendingSavesLabel.setText("Unsaved changes: " + (persister == null ? 0 : persister.getPendingMutations()))).start();
+
      // Make the main frame visible.
      frame.setVisible(true);
      // Show instructions dialog on startup.
@@ -774,35 +1031,36 @@ public class LeaderboardAppSwing {
   * Deletes all score data for a given set of player names.
   * This method iterates through the player names, removes their entries from the `scoreMap`,
   * and also removes them from the `uniquePlayerNames` set.
+  * The entries in memory are found through the player index, in time proportional to the player's entry count.
+  * With lazy loading, games that may hold one of the players are read in first (the games whose shard index
+  * lists a player, and every game without an index), which costs as much as loading those games.
   *
   * @param playerNamesToProcess A Set of player names whose data needs to be deleted.
-  * @return {@code true} if any data was actually changed (scores deleted from map), {@code false} otherwise.
+  * @return The games of the deleted scores; empty if no scores were deleted.
   */
- private boolean performPlayerDataDeletion(Set<String> playerNamesToProcess) {
-     boolean dataActuallyChanged = false; // Flag to track if any scoreMap entries were removed.
+ private HashSet<String> performPlayerDataDeletion(Set<String> playerNamesToProcess) {
+     HashSet<String> affectedGames = new HashSet<>(); // Games that lost at least one score.
+     // The players can have scores in any game, so every game that may hold one of them must be loaded:
+     // the games whose index lists one of the players, and every game without an index.
+     ArrayList<String> gamesToLoad = new ArrayList<>();
+     for (String gameName : residency.getUnloadedGames()) {
+         ShardIndex index = shardIndexFor(gameName);
+         if (index == null || !index.findPlayers(playerNamesToProcess::contains).isEmpty()) gamesToLoad.add(gameName);
+     }
+     ensureGamesLoaded(gamesToLoad);
      // Iterate over each player name provided for deletion.
      for (String pName : playerNamesToProcess) {
-         boolean scoresRemovedForThisPlayer = false; // Flag specific to the current player.
-         // Use an iterator to safely remove entries from scoreMap while iterating.
-         Iterator<Map.Entry<String, ScoreEntry>> iterator = scoreMap.entrySet().iterator();
-         while(iterator.hasNext()){
-             Map.Entry<String, ScoreEntry> mapEntry = iterator.next();
-             // If the current score entry belongs to the player being processed, remove it.
-             if(mapEntry.getValue().getName().equals(pName)){
-                 iterator.remove(); // Remove from scoreMap.
-                 scoresRemovedForThisPlayer = true; // Mark that a score was removed.
-             }
-         }
-
-         // If scores were removed for this player, it means data changed overall.
-         if (scoresRemovedForThisPlayer) {
-             dataActuallyChanged = true;
-             uniquePlayerNames.remove(pName);
-         } else {
-             uniquePlayerNames.remove(pName);
+         // Remove the rows of the player being processed from scoreMap, found through its player index.
+         List<ScoreEntry> removedEntries = scoreMap.removePlayer(ScoreEntry.PLAYER_NAMES.find(pName));
+         for (ScoreEntry removedEntry : removedEntries) {
+             persistDelete(pName, removedEntry.getGameName()); // Log the removal.
+             affectedGames.add(removedEntry.getGameName());
          }
+
+         playerEntryCounts.remove(pName);
+         uniquePlayerNames.remove(pName);
      }
-     return dataActuallyChanged;
+     return affectedGames;
  }
 
 
@@ -837,17 +1095,102 @@ public class LeaderboardAppSwing {
  }
 
  /**
-  * Creates a composite key string from a player's name and game name.
+  * Creates the composite key of a player name and a game name (their symbol ids packed into a long).
   * This key is used for storing and retrieving ScoreEntry objects in the `scoreMap`,
   * ensuring uniqueness for each player-game combination.
   *
   * @param name The player's name.
   * @param gameName The game's name.
-  * @return A string representing the composite key (e.g., "PlayerName::GAME::GameName").
+  * @return The composite key (see ScoreEntry.key()); names that were never seen give a key no entry has.
+  */
+ private static long getCompositeKey(String name, String gameName) {
+     // Looking the names up (rather than assigning ids) keeps searches for unknown names from growing the tables.
+     return ScoreEntry.key(ScoreEntry.PLAYER_NAMES.find(name), ScoreEntry.GAME_NAMES.find(gameName));
+ }
+
+ /**
+  * Returns a player's competition rank in a game: 1 plus the number of scores in the game that are higher, or
+  * equal with a more recent date. Scores tied on both share a rank (1, 2, 2, 4). With lazy loading the game is
+  * loaded first.
+  *
+  * @param playerName The player's name.
+  * @param gameName The game's name.
+  * @return The rank (1 is best), or 0 if the player has no score in the game.
+  */
+ int getRank(String playerName, String gameName) {
+     ensureGamesLoaded(Collections.singleton(gameName));
+     return scoreMap.rankInGame(getCompositeKey(playerName, gameName));
+ }
+
+ /**
+  * Returns the entry shown at a place of a game's leaderboard. Its competition rank (see getRank) is smaller
+  * than the place when it is tied with the entry above it. With lazy loading the game is loaded first.
+  *
+  * @param gameName The game's name.
+  * @param k The place in the game's leaderboard, from 1.
+  * @return The entry at that place, or null if the game has fewer than k entries.
+  */
+ ScoreEntry getEntryAtRank(String gameName, int k) {
+     ensureGamesLoaded(Collections.singleton(gameName));
+     return scoreMap.entryAtPosition(ScoreEntry.GAME_NAMES.find(gameName), k - 1);
+ }
+
+ /**
+  * Returns the first entries of a game's leaderboard, read from the front of the game's ranking, which every
+  * change keeps current, so no sort is needed. With lazy loading the game is loaded first.
+  *
+  * @param gameName The game's name.
+  * @param k The most entries to return.
+  * @return The game's first k entries (fewer if it has fewer) in leaderboard order.
+  */
+ List<ScoreEntry> topK(String gameName, int k) {
+     ensureGamesLoaded(Collections.singleton(gameName));
+     return scoreMap.topK(ScoreEntry.GAME_NAMES.find(gameName), k);
+ }
+
+ /**
+  * Shows a player's rank in a game: switches the leaderboard to the game, selects the player's entry and
+  * scrolls to it, then reports the rank and the players just above and below.
+  *
+  * @param playerName The player's name.
+  * @param gameName The game's name.
   */
- private String getCompositeKey(String name, String gameName) {
-     // A simple concatenation with a unique delimiter to distinguish player and game names.
-     return name + "::GAME::" + gameName;
+ private void showRank(String playerName, String gameName) {
+     // The name may be typed in another case than it is stored in: without an exact match, resolve it through
+     // the player index (case-insensitive) to the spelling that has a score in the game.
+     ensureGamesLoaded(Collections.singleton(gameName));
+     if (!scoreMap.containsKey(getCompositeKey(playerName, gameName))) {
+         for (ScoreEntry candidate : scoreMap.findAllByPlayer(playerName)) {
+             if (candidate.getGameName().equals(gameName)) {
+                 playerName = candidate.getName();
+                 break;
+             }
+         }
+     }
+     int rank = getRank(playerName, gameName);
+     if (rank == 0) {
+         JOptionPane.showMessageDialog(frame, "No score for '" + playerName + "' in '" + gameName + "'.", "Rank", JOptionPane.INFORMATION_MESSAGE);
+         return;
+     }
+     // Show the game's leaderboard; the entry's place in the game's ranking is then its index in the list.
+     if (gameName.equals(gameFilterComboBox.getSelectedItem())) {
+         refreshLeaderboard(); // The list may be showing search results.
+     } else {
+         gameFilterComboBox.setSelectedItem(gameName); // Refreshes the leaderboard.
+     }
+     long key = getCompositeKey(playerName, gameName);
+     int index = scoreMap.positionInGame(key);
+     scoreList.setSelectedIndex(index);
+     scoreList.ensureIndexIsVisible(index);
+     ScoreEntry entry = scoreMap.get(key);
+     StringBuilder message = new StringBuilder(String.format("%s is ranked #%,d of %,d in %s (score %d).", entry.getName(), rank,
+             scoreMap.ranking(entry.getGameId()).size(), entry.getGameName(), entry.getScore()));
+     // The neighbouring places of the leaderboard: the entry's place is index + 1.
+     ScoreEntry above = index > 0 ? getEntryAtRank(gameName, index) : null;
+     ScoreEntry below = getEntryAtRank(gameName, index + 2);
+     if (above != null) message.append(String.format("%nAbove: %s (score %d)", above.getName(), above.getScore()));
+     if (below != null) message.append(String.format("%nBelow: %s (score %d)", below.getName(), below.getScore()));
+     JOptionPane.showMessageDialog(frame, message.toString(), "Rank", JOptionPane.INFORMATION_MESSAGE);
  }
 
  /**
@@ -864,8 +1207,10 @@ public class LeaderboardAppSwing {
          showError("Please select a valid score entry to modify.");
          return;
       }
-     // Retrieve the corresponding entry from the scoreMap to ensure modifications are on the source data.
-     ScoreEntry entryInMap = scoreMap.get(getCompositeKey(selectedEntry.getName(), selectedEntry.getGameName()));
+     // Retrieve the corresponding entry from the scoreMap to ensure modifications are on the source data
+     // (loading its game if a search listed it unloaded).
+     ensureGamesLoaded(Collections.singleton(selectedEntry.getGameName()));
+     ScoreEntry entryInMap = scoreMap.get(selectedEntry.getKey());
      // Validate: Ensure the entry exists in the map.
      if (entryInMap == null) {
          showError("Selected entry not found in internal map."); // This indicates a potential sync issue.
@@ -882,68 +1227,208 @@ public class LeaderboardAppSwing {
                  "Score Adjustment Warning", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE,
                  null, options, options[0]);
          if (choice == 0) { // User chose "Set Resulting Score to 0".
-             entryInMap.score = 0;
+             potentialNewScore = 0;
          } else { // User chose "Cancel Modification" or closed the dialog.
              return; // Do not apply the modification.
          }
-     } else {
-         // If the resulting score is not negative, update it.
-         entryInMap.score = potentialNewScore;
      }
+     entryInMap.score = potentialNewScore;
      // Update the date of the score entry to reflect the modification time.
-     entryInMap.date = LocalDate.now();
-     // Save the updated scores to the persistent storage.
-     saveScores();
+     entryInMap.epochDay = ScoreEntry.today();
+     scoreMap.put(entryInMap.getKey(), entryInMap); // Write the change back (the map returns copies).
+     // Append the updated entry to the mutation log.
+     persistPut(entryInMap);
      // Refresh the leaderboard display to show the changes.
      refreshLeaderboard();
  }
 
+ /**
+  * Bulk-imports a text score file (one name,score,date,game line per score) on a background thread.
+  * The file is streamed in blocks of about a megabyte, so memory use does not depend on its size; each block
+  * is applied on the event dispatch thread with the same upsert rules as flushQueueToScores().
+  * The name lists and the leaderboard are rebuilt once at the end, where the import
+  * also waits for a single commit and reports its throughput.
+  *
+  * @param file The file to import.
+  * @param onDone Run on the event dispatch thread when the import has finished or failed.
+  */
+ private void importScores(File file, Runnable onDone) {
+     frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+     ImportSummary summary = new ImportSummary();
+     long start = System.nanoTime();
+     Thread reader = new Thread(() -> {
+         Exception failure = null;
+         MappedTextScoreLoader loader = new MappedTextScoreLoader(1);
+         try (InputStream in = new FileInputStream(file)) {
+             // Waiting for each block to be applied keeps at most one block in memory.
+             summary.lines = loader.streamBlocks(in, file, block -> runOnEventThread(() -> applyImportBlock(block.values(), summary)));
+             summary.malformed = loader.getMalformedLines();
+         } catch (IOException | RuntimeException e) {
+             failure = e;
+         }
+         Exception error = failure;
+         long elapsed = System.nanoTime() - start;
+         SwingUtilities.invokeLater(() -> finishImport(file, summary, elapsed, error, onDone));
+     }, "score-import");
+     reader.setDaemon(true);
+     reader.start();
+ }
+
+ /**
+  * Applies one block of imported entries to scoreMap and the mutation log with the same upsert as
+  * flushQueueToScores(), but without touching the derived structures (they are rebuilt once by finishImport()).
+  *
+  * @param block The block's entries; each player/game pair appears at most once.
+  * @param summary Receives the counts and the last commit ticket.
+  */
+ private void applyImportBlock(Collection<ScoreEntry> block, ImportSummary summary) {
+     // The games' stored entries must be in memory to tell new entries from updates.
+     HashSet<String> gameNames = new HashSet<>();
+     for (ScoreEntry entry : block) gameNames.add(entry.getGameName());
+     ensureGamesLoaded(gameNames);
+
+     for (ScoreEntry entry : block) upsert(entry, summary);
+ }
+
+ /**
+  * Adds an entry to scoreMap and the name sets, or updates the stored entry of the same player and game if
+  * the score differs (the date follows the new score; a negative score is stored as 0). An identical score is
+  * ignored. Every added or changed entry is logged. Shared by submitted scores and imports.
+  * The entry's game must be loaded.
+  *
+  * @param entry The submitted or imported entry.
+  * @param counts Counts the outcome and receives the commit ticket of a logged change.
+  */
+ private void upsert(ScoreEntry entry, UpsertCounts counts) {
+     long compositeKey = entry.getKey();
+     ScoreEntry existingEntry = scoreMap.get(compositeKey);
+     if (existingEntry == null) {
+         scoreMap.put(compositeKey, entry);
+         playerEntryCounts.merge(entry.getName(), 1, Integer::sum);
+         uniquePlayerNames.add(entry.getName());
+         uniqueGameNames.add(entry.getGameName());
+         counts.lastCommitTicket = persistPut(entry);
+         counts.added++;
+     } else if (existingEntry.getScore() != entry.getScore()) {
+         existingEntry.score = entry.getScore();
+         // Ensure score doesn't go below 0 (though initial submission already handles this, this is a safeguard).
+         if (existingEntry.score < 0) existingEntry.score = 0;
+         existingEntry.epochDay = entry.getEpochDay(); // Update date to reflect latest submission.
+         scoreMap.put(compositeKey, existingEntry); // Write the change back (the map returns copies).
+         counts.lastCommitTicket = persistPut(existingEntry);
+         counts.updated++;
+     } else {
+         counts.unchanged++; // If scores are identical, no action is taken (as per instructions).
+     }
+ }
+
+ /**
+  * Completes an import: rebuilds the derived structures and name lists once, commits, refreshes the
+  * leaderboard and shows a summary (or the error that stopped the import; rows applied before it are kept).
+  */
+ private void finishImport(File file, ImportSummary summary, long elapsedNanos, Exception error, Runnable onDone) {
+     // One commit for the whole import (a no-op unless a durable mode is configured); a store writes its snapshot once.
+     awaitCommit(summary.lastCommitTicket);
+     persistToStore(ScoreStore::snapshot);
+
+     updatePlayerNameInputComboBoxModel();
+     updateGameFilterComboBox();
+     updateGameInputComboBoxModel();
+     refreshLeaderboard();
+     frame.setCursor(Cursor.getDefaultCursor());
+     onDone.run();
+
+     if (error != null) {
+         error.printStackTrace();
+         showError("Import of '" + file.getName() + "' stopped: " + error.getMessage() + "\nScores read before the error were kept.");
+         return;
+     }
+     double seconds = Math.max(elapsedNanos, 1) / 1e9;
+     String message = String.format("Imported %,d lines from '%s' in %.2f s (%,.0f rows/s).%n%,d added, %,d updated, %,d unchanged, %,d malformed line(s) skipped.",
+             summary.lines, file.getName(), seconds, summary.lines / seconds, summary.added, summary.updated, summary.unchanged, summary.malformed);
+     JOptionPane.showMessageDialog(frame, message, "Import Finished", JOptionPane.INFORMATION_MESSAGE);
+ }
+
+ /**
+  * Exports a copy of scores to a file. The copy is taken on the event dispatch thread (a packed copy of the
+  * rows, 16 bytes per row, or the entries of a top N), so the file is written by a background thread while the
+  * leaderboard stays usable and keeps changing; the export holds the scores as they were when it started.
+  *
+  * @param copy The scores to export, in the order they are written; not changed by later edits.
+  * @param format The file format.
+  * @param file The file to write.
+  * @param onDone Run on the event dispatch thread when the export has finished or failed.
+  */
+ private void exportScores(Iterable<ScoreEntry> copy, ScoreExporter.Format format, File file, Runnable onDone) {
+     frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+     long start = System.nanoTime();
+     Thread writer = new Thread(() -> {
+         IOException failure = null;
+         long written = 0;
+         try {
+             written = ScoreExporter.write(copy, entry -> true, 0, format, file);
+         } catch (IOException e) {
+             failure = e;
+         }
+         IOException error = failure;
+         long exported = written;
+         double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+         SwingUtilities.invokeLater(() -> {
+             frame.setCursor(Cursor.getDefaultCursor());
+             onDone.run();
+             if (error != null) {
+                 error.printStackTrace();
+                 showError("Error exporting scores: " + error.getMessage());
+                 return;
+             }
+             JOptionPane.showMessageDialog(frame, String.format("Exported %,d score(s) to '%s' in %.2f s (%,.0f rows/s).", exported, file.getName(), seconds, exported / seconds),
+                     "Export Finished", JOptionPane.INFORMATION_MESSAGE);
+         });
+     }, "score-export");
+     writer.setDaemon(true);
+     writer.start();
+ }
+
+ /**
+  * Runs a task on the event dispatch thread and waits for it, so a background thread can hand over work
+  * without queueing more than one piece at a time.
+  *
+  * @param task The task.
+  */
+ private static void runOnEventThread(Runnable task) {
+     try {
+         SwingUtilities.invokeAndWait(task);
+     } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted", e);
+     } catch (InvocationTargetException e) {
+         throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+     }
+ }
+
  /**
   * Processes entries from the `pendingQueue` and updates the main data structures (`scoreMap`,
-  * `scores` linked list, `scoreTree`, `uniquePlayerNames`, `uniqueGameNames`).
+  * `uniquePlayerNames`, `uniqueGameNames`).
   * If an entry for a player/game already exists, it updates the score if the new score is different.
-  * Otherwise, it adds the new entry.
+  * Otherwise, it adds the new entry (see upsert). Every added or changed entry is appended to the mutation log.
   */
  private void flushQueueToScores() {
-     boolean newPlayerNameAdded = false; // Flag to track if a new player name was added to uniquePlayerNames.
-     boolean newGameTitleAdded = false;  // Flag to track if a new game name was added to uniqueGameNames.
-     boolean dataChanged = false;        // Flag to track if any score data was actually modified or added.
+     int playerNamesBefore = uniquePlayerNames.size(); // To tell whether new player names were added.
+     int gameNamesBefore = uniqueGameNames.size();     // To tell whether new game names were added.
+     UpsertCounts counts = new UpsertCounts();         // Holds the ticket of the last record logged.
 
      // Process each ScoreEntry in the pendingQueue.
      while (!pendingQueue.isEmpty()) {
          ScoreEntry newEntryToProcess = pendingQueue.poll(); // Retrieve and remove the head of the queue.
-         // Generate the composite key for the scoreMap.
-         String compositeKey = getCompositeKey(newEntryToProcess.getName(), newEntryToProcess.getGameName());
-         // Check if an entry already exists in the scoreMap for this player/game.
-         ScoreEntry existingEntry = scoreMap.get(compositeKey);
-
-         if (existingEntry != null) {
-             // If entry exists, check if the new score is different from the existing score.
-             if (newEntryToProcess.getScore() != existingEntry.getScore()) {
-                 existingEntry.score = newEntryToProcess.getScore(); // Update score.
-                 // Ensure score doesn't go below 0 (though initial submission already handles this, this is a safeguard).
-                 if (existingEntry.score < 0) existingEntry.score = 0;
-                 existingEntry.date = newEntryToProcess.getDate(); // Update date to reflect latest submission.
-                 dataChanged = true; // Mark that data has changed.
-             }
-             // If scores are identical, no action is taken (as per instructions).
-         } else {
-             // If entry does not exist, add the new entry to scoreMap and other data structures.
-             scoreMap.put(compositeKey, newEntryToProcess);
-             scores.add(newEntryToProcess); // Add to the linked list (though primarily for refreshLeaderboard).
-             scoreTree.insert(newEntryToProcess); // Insert into the BST.
-             dataChanged = true; // Mark that data has changed (new entry added).
-
-             // Add player name to uniquePlayerNames set; returns true if it was a new name.
-             if (uniquePlayerNames.add(newEntryToProcess.getName())) {
-                 newPlayerNameAdded = true;
-             }
-             // Add game name to uniqueGameNames set; returns true if it was a new game.
-             if (uniqueGameNames.add(newEntryToProcess.getGameName())) {
-                 newGameTitleAdded = true;
-             }
-         }
+         // The game's stored entries must be in memory to tell a new entry from an update.
+         ensureGamesLoaded(Collections.singleton(newEntryToProcess.getGameName()));
+         upsert(newEntryToProcess, counts);
      }
+     boolean newPlayerNameAdded = uniquePlayerNames.size() != playerNamesBefore;
+     boolean newGameTitleAdded = uniqueGameNames.size() != gameNamesBefore;
+
+     // Wait for the whole batch with a single commit (a no-op unless a durable mode is configured).
+     awaitCommit(counts.lastCommitTicket);
 
      // If new player names were added, update the player name input combo box model.
      if (newPlayerNameAdded) {
@@ -954,10 +1439,6 @@ public class LeaderboardAppSwing {
          updateGameFilterComboBox();
          updateGameInputComboBoxModel();
      }
-     // If any data was changed (score updated or new entry added), save all scores.
-     if (dataChanged) {
-         saveScores();
-     }
  }
 
  /**
@@ -1020,42 +1501,38 @@ public class LeaderboardAppSwing {
 
  /**
   * Refreshes the main leaderboard display (`scoreList`).
-  * It rebuilds the `scores` linked list from `scoreMap`, filters entries based on the
-  * `gameFilterComboBox` selection, sorts them, and then updates the `listModel`.
+  * It reads the rows of `scoreMap` that match the `gameFilterComboBox` selection in leaderboard order straight
+  * from the table's ranking of that game (or of all games), without sorting, and then updates the
+  * `listModel` with a view of each row.
   */
  private void refreshLeaderboard() {
-     // First, ensure the 'scores' LinkedList is synchronized with the 'scoreMap' (the source of truth).
-     scores.clear();
-     scores.addAll(scoreMap.values()); // Populate 'scores' with all current ScoreEntry objects from 'scoreMap'.
-
-     // Create a list to hold the entries that will be displayed.
-     ArrayList<ScoreEntry> entriesToDisplay = new ArrayList<>();
      // Get the currently selected game from the filter combo box.
      String selectedGame = (String) gameFilterComboBox.getSelectedItem();
 
-     // Determine which entries to display based on the filter.
+     // With lazy loading, read the shown game(s) into memory first and let idle games go (no-ops otherwise).
      if (selectedGame == null || "All Games".equals(selectedGame)) {
-         // If "All Games" is selected or no filter is active, add all scores.
-         entriesToDisplay.addAll(scores.toArrayList());
+         ensureGamesLoaded(residency.getUnloadedGames());
      } else {
-         // If a specific game is selected, filter scores for that game.
-         for (ScoreEntry entry : scores.toArrayList()) {
-             if (entry.getGameName().equals(selectedGame)) {
-                 entriesToDisplay.add(entry);
-             }
-         }
+         ensureGamesLoaded(Collections.singleton(selectedGame));
+         residency.touch(selectedGame);
+         evictIdleGames(selectedGame);
      }
 
-     // Sort the entries to be displayed according to the ScoreEntry's compareTo method
+     // Determine which entries to display based on the filter, in leaderboard order
      // (Score DESC, Date DESC, Player Name ASC).
-     mergeSort(entriesToDisplay, 0, entriesToDisplay.size() - 1);
+     List<ScoreEntry> entriesToDisplay;
+     if (selectedGame == null || "All Games".equals(selectedGame)) {
+         // If "All Games" is selected or no filter is active, show all scores.
+         entriesToDisplay = new ArrayList<>(scoreMap.size());
+         for (PrimitiveIterator.OfInt rows = scoreMap.leaderboardRows(); rows.hasNext(); ) entriesToDisplay.add(scoreMap.view(rows.nextInt()));
+     } else {
+         // If a specific game is selected, show only that game's scores: all of them, from the front of its ranking.
+         entriesToDisplay = topK(selectedGame, Integer.MAX_VALUE);
+     }
 
-     // Clear the existing items in the JList's model.
+     // Replace the JList's items with the filtered entries in one step, which updates the JList display.
      listModel.clear();
-     // Add the sorted and filtered entries to the list model, which updates the JList display.
-     for (ScoreEntry entry : entriesToDisplay) {
-         listModel.addElement(entry);
-     }
+     listModel.addAll(entriesToDisplay);
  }
 
  /**
@@ -1069,6 +1546,7 @@ public class LeaderboardAppSwing {
 
      // Get the current model of the game filter combo box.
      DefaultComboBoxModel<String> model = (DefaultComboBoxModel<String>) gameFilterComboBox.getModel();
+     rebuildingGameFilter = true; // Refresh once at the end, not for every intermediate selection.
      model.removeAllElements(); // Clear existing items.
 
      // Add the "All Games" option as the first item.
@@ -1097,137 +1575,380 @@ public class LeaderboardAppSwing {
      if (!reselected) {
          gameFilterComboBox.setSelectedItem("All Games");
      }
+     rebuildingGameFilter = false;
+     // Only a changed selection needs a refresh; callers refresh after changing the data itself.
+     if (!Objects.equals(previouslySelected, gameFilterComboBox.getSelectedItem())) {
+         refreshLeaderboard();
+     }
  }
 
  /**
-  * Saves all current scores from `scoreMap` to the "scores.txt" file.
-  * Scores are written one per line, comma-separated: name,score,date,gameName.
-  * The list of scores is sorted before saving to ensure consistent file output,
-  * though the primary order in the application is determined by `refreshLeaderboard`.
+  * Queues a put record for the given entry.
+  * Used whenever an entry is added or its score/date changes. The record captures the entry's
+  * current values and is written to the mutation log by the background writer, so the event
+  * thread never waits for disk I/O.
+  *
+  * @param entry The added or modified ScoreEntry.
+  * @return The commit ticket of the record (see awaitCommit).
   */
- private void saveScores() {
-     // Create a list from the values in scoreMap for consistent saving.
-     ArrayList<ScoreEntry> consistentScores = new ArrayList<>(scoreMap.values());
-     Collections.sort(consistentScores);
+ private long persistPut(ScoreEntry entry) {
+     if (persistToStore(target -> target.put(entry))) return 0;
+     residency.markDirty(entry.getGameName()); // Its shard is now out of date, so it must stay in memory.
+     if (persister == null) return 0; // The log could not be opened on startup; the error was already reported.
+     return persister.submit(LogRecord.put(entry), liveEntryCount());
+ }
 
-     // Use try-with-resources to ensure the PrintWriter is closed automatically.
-     try (PrintWriter writer = new PrintWriter(new FileWriter("scores.txt"))) {
-         // Write each ScoreEntry to the file.
-         for (ScoreEntry entry : consistentScores) {
-             writer.println(entry.getName() + "," + entry.getScore() + "," + entry.getDate() + "," + entry.getGameName());
+ /**
+  * Queues a delete record for the given player/game pair.
+  *
+  * @param name The player's name of the removed entry.
+  * @param gameName The game name of the removed entry.
+  */
+ private void persistDelete(String name, String gameName) {
+     if (persistToStore(target -> target.delete(name, gameName))) return;
+     residency.markDirty(gameName);
+     if (persister == null) return;
+     persister.submit(LogRecord.delete(name, gameName), liveEntryCount());
+ }
+
+ /**
+  * Queues a single record that removes every entry of a game.
+  *
+  * @param gameName The deleted game.
+  */
+ private void persistDropGame(String gameName) {
+     if (persistToStore(target -> {
+         for (ScoreEntry entry : target.scanByGame(gameName)) target.delete(entry.getName(), gameName);
+     })) return;
+     residency.markDirty(gameName);
+     if (persister == null) return;
+     persister.submit(LogRecord.dropGame(gameName), liveEntryCount());
+ }
+
+ /**
+  * Applies a mutation to the selected ScoreStore, if one is selected, and queues a sync of the store after the
+  * current event, so every user action is saved once it is complete (as saveScores() did). Errors are reported
+  * but the in-memory change stands, as with the log.
+  *
+  * @param change The mutation.
+  * @return True if a store is selected (the mutation is then not logged); false for the default engine.
+  */
+ private boolean persistToStore(ScoreStore.Change change) {
+     if (store == null) return false;
+     try {
+         synchronized (storeLock) {
+             if (storeClosed) return true; // The application is exiting.
+             change.apply(store);
          }
      } catch (IOException e) {
-         // Handle potential IO errors during saving.
-         e.printStackTrace(); // Print stack trace for debugging.
-         showError("Error saving scores: " + e.getMessage()); // Show error dialog to user.
+         e.printStackTrace();
+         showError("Error saving scores: " + e.getMessage());
+     }
+     if (!storeSyncPending) {
+         storeSyncPending = true;
+         SwingUtilities.invokeLater(this::syncStore); // One sync for all the changes of this action.
      }
+     return true;
  }
 
  /**
-  * Loads scores from the "scores.txt" file into the application's data structures
-  * (`scoreMap`, `uniquePlayerNames`, `uniqueGameNames`, `scores` linked list, `scoreTree`).
-  * Clears existing data before loading. Handles potential file errors and malformed lines.
+  * Makes the selected store's changes durable (see ScoreStore.sync).
   */
- private void loadScores() {
-     File file = new File("scores.txt"); // Represents the scores file.
+ private void syncStore() {
+     storeSyncPending = false;
+     try {
+         synchronized (storeLock) {
+             if (!storeClosed) store.sync();
+         }
+     } catch (IOException e) {
+         e.printStackTrace();
+         showError("Error saving scores: " + e.getMessage());
+     }
+ }
 
-     // Clear all existing data structures before loading from file.
-     scoreMap.clear();
-     uniquePlayerNames.clear();
-     uniqueGameNames.clear();
-     scores.clear(); // Custom linked list.
-     scoreTree.clear(); // Custom BST.
-
-     // Check if the scores file exists.
-     if (file.exists()) {
-         // Use try-with-resources for automatic closing of BufferedReader.
-         try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-             String line;
-             // Read the file line by line.
-             while ((line = reader.readLine()) != null) {
-                 // Split each line by comma, expecting 4 parts (name, score, date, gameName).
-                 String[] parts = line.split(",", 4);
-                 if (parts.length == 4) {
-                     try {
-                         // Parse data from parts.
-                         String name = parts[0].trim();
-                         int scoreVal = Integer.parseInt(parts[1].trim());
-                         if (scoreVal < 0) scoreVal = 0; // Ensure loaded scores are not negative.
-                         LocalDate date = LocalDate.parse(parts[2].trim()); // Parse date string.
-                         String gameName = parts[3].trim();
-
-                         // Create ScoreEntry and add to data structures.
-                         ScoreEntry entry = new ScoreEntry(name, scoreVal, date, gameName);
-                         scoreMap.put(getCompositeKey(name, gameName), entry); // Add to the primary map.
-                         uniquePlayerNames.add(name); // Add to set of unique player names.
-                         uniqueGameNames.add(gameName); // Add to set of unique game names.
-                     } catch (Exception ex) {
-                         // Catch errors during parsing of a line (e.g., NumberFormatException, DateTimeParseException).
-                         System.err.println("Skipping malformed line: '" + line + "'. Error: " + ex.getMessage());
-                     }
-                 } else {
-                     // If a line doesn't have 4 parts, it's considered malformed.
-                     System.err.println("Skipping malformed line (incorrect number of parts): " + line);
-                 }
-             }
-             // After loading all entries into scoreMap, populate auxiliary structures.
-             scores.addAll(scoreMap.values()); // Populate the ScoreLinkedList.
-             for(ScoreEntry se : scoreMap.values()) { // Populate the ScoreBST.
-                 scoreTree.insert(se);
-             }
+ /**
+  * Closes the selected store (writing it out), once. Called on the event thread when the window closes, and by
+  * the shutdown hook if the application is stopped another way; the lock keeps the two from overlapping with
+  * each other and with changes made on the event thread.
+  */
+ private void closeStore() {
+     synchronized (storeLock) {
+         if (store == null || storeClosed) return;
+         storeClosed = true;
+         try {
+             store.close();
          } catch (IOException e) {
-             // Handle IO errors during file reading.
-             e.printStackTrace();
-             showError("Error loading scores: " + e.getMessage());
+             System.err.println("Could not save scores: " + e.getMessage());
          }
      }
-     // After loading (or if file doesn't exist), update UI components that depend on this data.
-     updatePlayerNameInputComboBoxModel();
-     updateGameFilterComboBox();
-     updateGameInputComboBoxModel();
  }
 
  /**
-  * Utility method to display an error message dialog.
-  * @param message The error message to display.
+  * @return The number of entries across all games, loaded or not (used for compaction thresholds).
   */
- private void showError(String message) {
-     JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+ private int liveEntryCount() {
+     return scoreMap.size() + residency.getUnloadedEntryCount();
  }
 
  /**
-  * Sorts an ArrayList of ScoreEntry objects using the Merge Sort algorithm.
-  * This is a recursive implementation.
-  * @param list The ArrayList of ScoreEntry objects to sort.
-  * @param left The starting index of the portion of the list to sort.
-  * @param right The ending index of the portion of the list to sort.
+  * Reads the shards of the given games into memory if they are not loaded yet (lazy loading only;
+  * with everything loaded at startup this does nothing). A shard that cannot be read is reported and
+  * left unloaded, so the next query tries again.
+  *
+  * @param gameNames The games that are about to be shown or changed.
   */
- private void mergeSort(ArrayList<ScoreEntry> list, int left, int right) {
-     // Base case for recursion: if the segment has 0 or 1 element, it's already sorted.
-     if (left < right) {
-         int mid = (left + right) / 2; // Find the middle point to divide the list into two halves.
-         // Recursively sort the first half.
-         mergeSort(list, left, mid);
-         // Recursively sort the second half.
-         mergeSort(list, mid + 1, right);
-         // Merge the two sorted halves.
-         merge(list, left, mid, right);
+ private void ensureGamesLoaded(Collection<String> gameNames) {
+     for (String gameName : gameNames) {
+         if (residency.isLoaded(gameName)) continue;
+         LongScoreMap loaded = new LongScoreMap(residency.getShard(gameName).entryCount);
+         try {
+             snapshot.loadShard(residency.getShard(gameName), loaded);
+         } catch (IOException e) {
+             e.printStackTrace();
+             showError("Error loading scores for '" + gameName + "': " + e.getMessage());
+             continue;
+         }
+         scoreMap.putAll(loaded);
+         residency.markLoaded(gameName, loaded.size());
      }
  }
 
  /**
-  * Merges two sorted sub-arrays of ScoreEntry objects into a single sorted sub-array.
-  * This is a helper method for `mergeSort`.
-  * The sorting order is defined by `ScoreEntry.compareTo()`.
-  * @param list The original ArrayList containing the sub-arrays.
-  * @param left The starting index of the first sub-array.
-  * @param mid The ending index of the first sub-array.
-  * @param right The ending index of the second sub-array.
+  * Returns the index sidecar of a game that is not loaded, opening (or building) it on first use.
+  *
+  * @param gameName A game that is not loaded.
+  * @return The game's index, or null if indexes are disabled or its shard cannot be indexed.
   */
- private void merge(ArrayList<ScoreEntry> list, int left, int mid, int right) {
-     // Create temporary ArrayLists for the left and right sub-arrays.
-     ArrayList<ScoreEntry> leftList = new ArrayList<>(list.subList(left, mid + 1));
-     ArrayList<ScoreEntry> rightList = new ArrayList<>(list.subList(mid + 1, right + 1));
+ private ShardIndex shardIndexFor(String gameName) {
+     // A game that is not loaded has not changed since startup, so its shard and index stay valid.
+     if (!shardIndexes.containsKey(gameName)) shardIndexes.put(gameName, snapshot.openIndex(residency.getShard(gameName)));
+     return shardIndexes.get(gameName);
+ }
+
+ /**
+  * Drops the entries of idle, unchanged games from memory while more entries are loaded than the
+  * lazy-loading budget allows. Evicted games are read again the next time they are needed.
+  *
+  * @param keepGame The game on screen, which is never evicted.
+  */
+ private void evictIdleGames(String keepGame) {
+     List<String> victims = residency.chooseEvictions(scoreMap.size(), keepGame);
+     if (victims.isEmpty()) return;
+     BitSet evictedGames = new BitSet();
+     for (String gameName : victims) {
+         int gameId = ScoreEntry.GAME_NAMES.find(gameName);
+         if (gameId >= 0) evictedGames.set(gameId);
+     }
+     scoreMap.removeRows(row -> evictedGames.get(scoreMap.gameId(row)));
+     victims.forEach(residency::markEvicted);
+ }
+
+ /**
+  * Waits until a record is as durable as the configured durability mode promises.
+  * Returns immediately in the default "none" mode. In the "batched" and "per-record" modes the caller
+  * shares one fsync with every other record committed in the same batch.
+  *
+  * @param ticket The commit ticket returned by persistPut.
+  */
+ private void awaitCommit(long ticket) {
+     if (persister == null || ticket == 0) return;
+     if (!persister.awaitCommit(ticket, WriteBehindPersister.COMMIT_TIMEOUT_MS)) {
+         showError("Scores could not be confirmed as saved to disk yet; they will be retried in the background.");
+     }
+ }
+
+ /**
+  * Loads scores into the application's data structures
+  * (`scoreMap`, `uniquePlayerNames`, `uniqueGameNames`).
+  * The snapshot (one shard file per game in "scores.d", or the legacy "scores.txt"/"scores.dat" before the first compaction)
+  * is read first, then every record in the sealed log segment (if a compaction was interrupted) and the "scores.log"
+  * mutation log is replayed on top of it in order.
+  * With lazy loading ("leaderboard.lazyLoading=true"), only the manifest, the player dictionary and the games the
+  * logs touch are read here; every other game is read the first time it is shown (see GameResidency).
+  * Afterwards the log is handed to the background writer for new mutations.
+  * With another storage engine selected ("leaderboard.store", see ScoreStore), that store is read instead.
+  * Clears existing data before loading. Handles potential file errors and malformed lines.
+  */
+ private void loadScores() {
+     // Clear all existing data structures before loading from file.
+     scoreMap.clear();
+     uniquePlayerNames.clear();
+     uniqueGameNames.clear();
+
+     // Read the entries from the configured storage engine.
+     boolean lazy = ScoreStore.DEFAULT_BACKEND.equalsIgnoreCase(ScoreStore.BACKEND) ? loadShardsAndLog() : loadFromStore(); // True if games are read on demand.
+
+     // After loading all entries into scoreMap, populate the name sets and auxiliary structures.
+     // The name sets are derived here (rather than per line) because the log may have deleted entries.
+     // Players and games that are only on disk come from the player counts and the unloaded shards.
+     for (Map.Entry<String, Integer> player : playerEntryCounts.entrySet()) {
+         if (player.getValue() > 0) uniquePlayerNames.add(player.getKey()); // Add to set of unique player names.
+     }
+     uniqueGameNames.addAll(residency.getUnloadedGames());
+     uniqueGameNames.addAll(scoreMap.gameNames()); // Add to set of unique game names.
+
+     // After loading (or if file doesn't exist), update UI components that depend on this data.
+     updatePlayerNameInputComboBoxModel();
+     updateGameFilterComboBox();
+     updateGameInputComboBoxModel();
+
+     // With lazy loading, start on a single game: "All Games" would read every shard.
+     if (lazy && gameFilterComboBox.getItemCount() > 1) {
+         gameFilterComboBox.setSelectedIndex(1);
+     }
+ }
+
+ /**
+  * Reads the default storage engine: the sharded snapshot with the sealed segment and the mutation log replayed
+  * on top, then hands the log to the background writer.
+  *
+  * @return True if games are read on demand this session (lazy loading).
+  */
+ private boolean loadShardsAndLog() {
+     // A sealed segment left behind by an unfinished compaction is older than the active log, so it is replayed first.
+     File sealedLogFile = new File(SEALED_LOG_FILE_NAME);
+     ScoreLog scoreLog = new ScoreLog(new File(SCORE_LOG_FILE_NAME));
+
+     // Read the snapshot into the primary map.
+     boolean lazy = false;
+     try {
+         // Lazy loading needs a manifest with a player dictionary (written by the first compaction).
+         ShardedSnapshot.Manifest manifest = GameResidency.LAZY_LOADING ? snapshot.readManifest() : null;
+         HashMap<String, Integer> playerDictionary = snapshot.readPlayerCounts(manifest);
+         if (playerDictionary != null) {
+             lazy = true;
+             residency.start(manifest);
+             playerEntryCounts.putAll(playerDictionary);
+             // Games the logs change are read now, since the logs are replayed over them; they stay loaded.
+             HashSet<String> loggedGames = new HashSet<>();
+             Consumer<ScoreEntry> notePut = entry -> loggedGames.add(entry.getGameName());
+             BiConsumer<String, String> noteDelete = (name, gameName) -> loggedGames.add(gameName);
+             if (sealedLogFile.exists()) {
+                 new ScoreLog(sealedLogFile).replay(notePut, noteDelete, loggedGames::add);
+             }
+             scoreLog.replay(notePut, noteDelete, loggedGames::add);
+             snapshot.load(scoreMap, loggedGames::contains);
+             loggedGames.forEach(residency::markDirty);
+         } else {
+             // Read every game's shard.
+             snapshot.load(scoreMap, gameName -> true);
+             playerEntryCounts.putAll(scoreMap.countByPlayer());
+         }
+     } catch (IOException e) {
+         // Handle IO errors during file reading.
+         e.printStackTrace();
+         showError("Error loading scores: " + e.getMessage());
+     }
+
+     // Replay the mutation log on top of the snapshot, then keep it open for new records.
+     try {
+         // Player counts follow every entry the log adds or removes.
+         Consumer<ScoreEntry> onPut = entry -> {
+             if (scoreMap.put(entry.getKey(), entry) == null) {
+                 playerEntryCounts.merge(entry.getName(), 1, Integer::sum);
+             }
+         };
+         BiConsumer<String, String> onDelete = (name, gameName) -> {
+             if (scoreMap.remove(getCompositeKey(name, gameName)) != null) {
+                 playerEntryCounts.merge(name, -1, Integer::sum);
+             }
+         };
+         Consumer<String> onDropGame = gameName -> {
+             int gameId = ScoreEntry.GAME_NAMES.find(gameName);
+             for (ScoreEntry entry : scoreMap.removeRows(row -> scoreMap.gameId(row) == gameId)) {
+                 playerEntryCounts.merge(entry.getName(), -1, Integer::sum);
+             }
+         };
+         if (sealedLogFile.exists()) {
+             new ScoreLog(sealedLogFile).replay(onPut, onDelete, onDropGame);
+         }
+         scoreLog.replay(onPut, onDelete, onDropGame);
+         scoreLog.open();
+         if (sealedLogFile.exists()) {
+             compactor.compactInBackground(); // Finish the compaction that was interrupted last time.
+         }
+         // Hand the log to the background writer; it also starts a compaction if a long
+         // previous session left a large log behind.
+         persister = new WriteBehindPersister(scoreLog, compactor, sealedLogFile, WriteBehindPersister.Durability.fromSetting(),
+                 e -> SwingUtilities.invokeLater(() -> showError("Error saving scores: " + e.getMessage())));
+         persister.start(liveEntryCount());
+         // Write out everything still pending when the application exits.
+         Runtime.getRuntime().addShutdownHook(new Thread(persister::close, "score-log-shutdown"));
+     } catch (IOException e) {
+         e.printStackTrace();
+         showError("Error loading score log: " + e.getMessage());
+         persister = null; // Mutations will not be persisted this session.
+     }
+     return lazy;
+ }
+
+ /**
+  * Opens the ScoreStore selected with "leaderboard.store" (see ScoreStore) and reads every entry into scoreMap.
+  * The store is closed (and with it written out) when the window closes or the application exits.
+  *
+  * @return False: a store is always read in full.
+  */
+ private boolean loadFromStore() {
+     try {
+         if (store == null) {
+             store = ScoreStore.open(ScoreStore.BACKEND, new File("."));
+             Runtime.getRuntime().addShutdownHook(new Thread(this::closeStore, "score-store-shutdown"));
+         }
+         synchronized (storeLock) {
+             store.scanAll(entry -> {
+                 if (scoreMap.put(entry.getKey(), entry) == null) {
+                     playerEntryCounts.merge(entry.getName(), 1, Integer::sum);
+                 }
+             });
+         }
+     } catch (IOException e) {
+         e.printStackTrace();
+         showError("Error loading scores: " + e.getMessage());
+     }
+     return false;
+ }
+
+ /**
+  * Utility method to display an error message dialog.
+  * @param message The error message to display.
+  */
+ private void showError(String message) {
+     JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+ }
+
+ /**
+  * Sorts an ArrayList of ScoreEntry objects using the Merge Sort algorithm.
+  * This is a recursive implementation.
+  * @param list The ArrayList of ScoreEntry objects to sort.
+  * @param left The starting index of the portion of the list to sort.
+  * @param right The ending index of the portion of the list to sort.
+  */
+ private void mergeSort(ArrayList<ScoreEntry> list, int left, int right) {
+     // Base case for recursion: if the segment has 0 or 1 element, it's already sorted.
+     if (left < right) {
+         int mid = (left + right) / 2; // Find the middle point to divide the list into two halves.
+         // Recursively sort the first half.
+         mergeSort(list, left, mid);
+         // Recursively sort the second half.
+         mergeSort(list, mid + 1, right);
+         // Merge the two sorted halves.
+         merge(list, left, mid, right);
+     }
+ }
+
+ /**
+  * Merges two sorted sub-arrays of ScoreEntry objects into a single sorted sub-array.
+  * This is a helper method for `mergeSort`.
+  * The sorting order is defined by `ScoreEntry.compareTo()`.
+  * @param list The original ArrayList containing the sub-arrays.
+  * @param left The starting index of the first sub-array.
+  * @param mid The ending index of the first sub-array.
+  * @param right The ending index of the second sub-array.
+  */
+ private void merge(ArrayList<ScoreEntry> list, int left, int mid, int right) {
+     // Create temporary ArrayLists for the left and right sub-arrays.
+     ArrayList<ScoreEntry> leftList = new ArrayList<>(list.subList(left, mid + 1));
+     ArrayList<ScoreEntry> rightList = new ArrayList<>(list.subList(mid + 1, right + 1));
 
      // Initialize indices for iterating through leftList, rightList, and the original list.
      int i = 0, j = 0; // Pointers for leftList and rightList respectively.
@@ -1258,10 +1979,18 @@ public class LeaderboardAppSwing {
   * Implements Comparable for sorting purposes.
   */
  static class ScoreEntry implements Comparable<ScoreEntry> {
-     String name;        // Player's name.
+     int nameId;         // Player's name, as an id in PLAYER_NAMES.
      int score;          // Player's score.
-     LocalDate date;     // Date the score was achieved/recorded.
-     String gameName;    // Name of the game.
+     int epochDay;       // Date the score was achieved/recorded, in days since 1970-01-01.
+     int gameId;         // Name of the game, as an id in GAME_NAMES.
+
+     // Every distinct player and game name is stored once in these tables; entries and keys hold only ids.
+     static final SymbolTable PLAYER_NAMES = new SymbolTable();
+     static final SymbolTable GAME_NAMES = new SymbolTable();
+
+     // The leaderboard order of compareTo(), with the game name as the final tie-break so that entries of
+     // different games never compare as equal (needed by sorted sets of entries from several games).
+     static final Comparator<ScoreEntry> LEADERBOARD_ORDER = Comparator.<ScoreEntry>naturalOrder().thenComparing(ScoreEntry::getGameName);
 
      /**
       * Constructor for ScoreEntry.
@@ -1271,17 +2000,67 @@ public class LeaderboardAppSwing {
       * @param gameName Name of the game.
       */
      public ScoreEntry(String name, int score, LocalDate date, String gameName) {
-         this.name = name;
+         this(name, score, Math.toIntExact(date.toEpochDay()), gameName);
+     }
+
+     /**
+      * Constructor for ScoreEntry with the date as an epoch day.
+      * @param name Player's name.
+      * @param score Player's score.
+      * @param epochDay Date of the score, in days since 1970-01-01.
+      * @param gameName Name of the game.
+      */
+     public ScoreEntry(String name, int score, int epochDay, String gameName) {
+         this(PLAYER_NAMES.idOf(name), score, epochDay, GAME_NAMES.idOf(gameName));
+     }
+
+     /**
+      * Constructor for ScoreEntry from already resolved name ids.
+      * @param nameId Player's name id in PLAYER_NAMES.
+      * @param score Player's score.
+      * @param epochDay Date of the score, in days since 1970-01-01.
+      * @param gameId Game's name id in GAME_NAMES.
+      */
+     public ScoreEntry(int nameId, int score, int epochDay, int gameId) {
+         this.nameId = nameId;
          this.score = score;
-         this.date = date;
-         this.gameName = gameName;
+         this.epochDay = epochDay;
+         this.gameId = gameId;
      }
 
-     // Getter methods for the fields.
-     public String getName() { return name; }
+     // Getter methods for the fields. Names and the LocalDate are created only when asked for (for display).
+     public String getName() { return PLAYER_NAMES.nameOf(nameId); }
      public int getScore() { return score; }
-     public LocalDate getDate() { return date; }
-     public String getGameName() { return gameName; }
+     public LocalDate getDate() { return LocalDate.ofEpochDay(epochDay); }
+     public int getEpochDay() { return epochDay; }
+     public String getGameName() { return GAME_NAMES.nameOf(gameId); }
+     public int getNameId() { return nameId; }
+     public int getGameId() { return gameId; }
+
+     /**
+      * @return Today's date as an epoch day, for entries created or modified now.
+      */
+     static int today() {
+         return Math.toIntExact(LocalDate.now().toEpochDay());
+     }
+
+     /**
+      * @return This entry's composite key, unique for each player-game combination.
+      */
+     public long getKey() {
+         return key(nameId, gameId);
+     }
+
+     /**
+      * Packs a player id and a game id into one composite key: the player id in the high 32 bits, the game id
+      * in the low 32. The key is not hashed here; the hash tables mix it when they pick a slot.
+      * @param nameId Player's name id in PLAYER_NAMES.
+      * @param gameId Game's name id in GAME_NAMES.
+      * @return The composite key used by the score map and the stores.
+      */
+     static long key(int nameId, int gameId) {
+         return ((long) nameId << 32) | (gameId & 0xFFFFFFFFL);
+     }
 
      /**
       * Compares this ScoreEntry with another for ordering.
@@ -1298,10 +2077,10 @@ public class LeaderboardAppSwing {
          int scoreCompare = Integer.compare(other.score, this.score);
          if (scoreCompare != 0) return scoreCompare;
          // If scores are equal, compare dates: more recent date comes first (descending).
-         int dateCompare = other.date.compareTo(this.date);
+         int dateCompare = Integer.compare(other.epochDay, this.epochDay);
          if (dateCompare != 0) return dateCompare;
          // If scores and dates are equal, compare names alphabetically (ascending).
-         return this.name.compareTo(other.name);
+         return this.nameId == other.nameId ? 0 : this.getName().compareTo(other.getName());
      }
 
      /**
@@ -1310,12 +2089,12 @@ public class LeaderboardAppSwing {
       */
      @Override
      public String toString() {
-         return name + " - " + score + " - " + date + " (" + gameName + ")";
+         return getName() + " - " + score + " - " + getDate() + " (" + getGameName() + ")";
      }
 
      /**
       * Checks if this ScoreEntry is equal to another object.
-      * Equality is based on all fields: name, score, date, and gameName.
+      * Equality is based on all fields: name, score, date, and game (names compare by id).
       * @param o The object to compare with.
       * @return True if the objects are equal, false otherwise.
       */
@@ -1326,243 +2105,4857 @@ public class LeaderboardAppSwing {
          ScoreEntry that = (ScoreEntry) o; // Cast to ScoreEntry.
          // Compare all fields for equality.
          return score == that.score &&
-                Objects.equals(name, that.name) &&
-                Objects.equals(date, that.date) &&
-                Objects.equals(gameName, that.gameName);
+                nameId == that.nameId &&
+                epochDay == that.epochDay &&
+                gameId == that.gameId;
      }
 
      /**
       * Generates a hash code for this ScoreEntry.
-      * Based on all fields: name, score, date, and gameName.
+      * Based on all fields: name, score, date, and game.
       * @return The hash code value.
       */
      @Override
      public int hashCode() {
-         return Objects.hash(name, score, date, gameName);
+         return Objects.hash(nameId, score, epochDay, gameId);
      }
  }
 
  /**
-  * A simple singly linked list implementation to store ScoreEntry objects.
+  * An open-addressing hash map from composite keys (see ScoreEntry.key()) to entries, stored in a
+  * primitive long[] of keys and a parallel array of entries. Lookups by a long key neither box the key
+  * nor allocate anything, and there are no per-entry node objects. Collisions are resolved by linear
+  * probing; removals leave a marker ("tombstone") so that iterators can remove entries without moving
+  * others, and markers are cleared when the table is rebuilt.
+  * It is also a Map&lt;Long, ScoreEntry&gt; so the loaders and streams can use it like any other map; the
+  * Map methods box their keys, so code on hot paths calls the long overloads. Null entries are not allowed,
+  * and iterators are not fail-fast.
   */
- static class ScoreLinkedList {
-     private ScoreNode head; // Head of the linked list.
+ static class LongScoreMap extends AbstractMap<Long, ScoreEntry> {
+     private static final int MIN_CAPACITY = 16; // Must be a power of two.
+     // Marks a slot whose entry was removed; probing continues past it.
+     private static final ScoreEntry REMOVED = new ScoreEntry(-1, 0, 0, -1);
+
+     private long[] keys;          // Key of each slot.
+     private ScoreEntry[] values;  // Entry of each slot (null = never used, REMOVED = removed).
+     private int size;             // Number of entries.
+     private int used;             // Number of slots that are not null (entries plus removal markers).
+     private int shift;            // 64 - log2(capacity): the hash's top bits pick the slot.
+
+     public LongScoreMap() {
+         this(MIN_CAPACITY);
+     }
+
+     /**
+      * @param expectedSize Number of entries the map should hold without being rebuilt.
+      */
+     public LongScoreMap(int expectedSize) {
+         allocate(capacityFor(expectedSize));
+     }
 
      /**
-      * Adds a new ScoreEntry to the end of the linked list.
-      * @param entry The ScoreEntry to add.
+      * @param key A composite key.
+      * @return The entry with that key, or null if there is none.
       */
-     public void add(ScoreEntry entry) {
-         ScoreNode newNode = new ScoreNode(entry);
-         if (head == null) { // If list is empty, new node becomes the head.
-             head = newNode;
-         } else { // Traverse to the end of the list and add the new node.
-             ScoreNode current = head;
-             while (current.next != null) {
-                 current = current.next;
+     public ScoreEntry get(long key) {
+         int slot = find(key);
+         return slot < 0 ? null : values[slot];
+     }
+
+     public boolean containsKey(long key) {
+         return find(key) >= 0;
+     }
+
+     /**
+      * Stores an entry under a key, replacing the entry the key had.
+      * @param key A composite key.
+      * @param entry The entry (not null).
+      * @return The entry the key had before, or null if it was absent.
+      */
+     public ScoreEntry put(long key, ScoreEntry entry) {
+         if (entry == null) throw new NullPointerException("LongScoreMap does not hold null entries");
+         int mask = keys.length - 1;
+         int firstRemoved = -1;
+         for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+             ScoreEntry current = values[slot];
+             if (current == null) {
+                 // The key is absent: reuse the first removal marker on its probe path, if any.
+                 if (firstRemoved >= 0) {
+                     slot = firstRemoved;
+                 } else {
+                     used++;
+                 }
+                 keys[slot] = key;
+                 values[slot] = entry;
+                 size++;
+                 if (used * 4L > keys.length * 3L) rebuild(capacityFor(size)); // Over 3/4 full.
+                 return null;
+             }
+             if (current == REMOVED) {
+                 if (firstRemoved < 0) firstRemoved = slot;
+             } else if (keys[slot] == key) {
+                 values[slot] = entry;
+                 return current;
              }
-             current.next = newNode;
          }
      }
 
      /**
-      * Adds all ScoreEntry objects from a collection to this linked list.
-      * @param entries A collection of ScoreEntry objects.
+      * @param key A composite key.
+      * @return The removed entry, or null if the key was absent.
       */
-     public void addAll(Collection<ScoreEntry> entries) {
-         for (ScoreEntry entry : entries) {
-             this.add(entry);
+     public ScoreEntry remove(long key) {
+         int slot = find(key);
+         if (slot < 0) return null;
+         ScoreEntry removed = values[slot];
+         removeAt(slot);
+         return removed;
+     }
+
+     @Override
+     public ScoreEntry get(Object key) {
+         return key instanceof Long ? get((long) (Long) key) : null;
+     }
+
+     @Override
+     public boolean containsKey(Object key) {
+         return key instanceof Long && containsKey((long) (Long) key);
+     }
+
+     @Override
+     public ScoreEntry put(Long key, ScoreEntry entry) {
+         return put((long) key, entry);
+     }
+
+     @Override
+     public ScoreEntry remove(Object key) {
+         return key instanceof Long ? remove((long) (Long) key) : null;
+     }
+
+     @Override
+     public void putAll(Map<? extends Long, ? extends ScoreEntry> map) {
+         if (map instanceof LongScoreMap) {
+             LongScoreMap other = (LongScoreMap) map;
+             // Grow first: copying a table slot by slot visits keys in hash order, which would pile them
+             // into long probe runs in a smaller table that uses the same hash.
+             int capacity = capacityFor(size + other.size);
+             if (capacity > keys.length) rebuild(capacity);
+             for (int slot = 0; slot < other.values.length; slot++) {
+                 ScoreEntry entry = other.values[slot];
+                 if (entry != null && entry != REMOVED) put(other.keys[slot], entry);
+             }
+         } else {
+             super.putAll(map);
          }
      }
 
+     @Override
+     public int size() {
+         return size;
+     }
+
+     @Override
+     public void clear() {
+         Arrays.fill(values, null); // Keeps the capacity, like HashMap.clear().
+         size = 0;
+         used = 0;
+     }
+
+     @Override
+     public Set<Map.Entry<Long, ScoreEntry>> entrySet() {
+         return new AbstractSet<Map.Entry<Long, ScoreEntry>>() {
+             @Override
+             public Iterator<Map.Entry<Long, ScoreEntry>> iterator() {
+                 return new SlotIterator<Map.Entry<Long, ScoreEntry>>() {
+                     @Override
+                     Map.Entry<Long, ScoreEntry> at(int slot) {
+                         return new AbstractMap.SimpleImmutableEntry<>(keys[slot], values[slot]);
+                     }
+                 };
+             }
+
+             @Override
+             public int size() {
+                 return size;
+             }
+         };
+     }
+
+     @Override
+     public Collection<ScoreEntry> values() {
+         return new AbstractCollection<ScoreEntry>() {
+             @Override
+             public Iterator<ScoreEntry> iterator() {
+                 return new SlotIterator<ScoreEntry>() {
+                     @Override
+                     ScoreEntry at(int slot) {
+                         return values[slot];
+                     }
+                 };
+             }
+
+             @Override
+             public int size() {
+                 return size;
+             }
+         };
+     }
+
      /**
-      * Deletes a specific ScoreEntry from the linked list that matches all provided fields.
-      * This is a precise match deletion.
-      * @param name Player's name of the entry to delete.
-      * @param gameName Game name of the entry to delete.
-      * @param score Score of the entry to delete.
-      * @param date Date of the entry to delete.
+      * Iterates over the occupied slots. remove() only marks the slot, so no entry moves during iteration.
       */
-     public void deleteSpecificEntry(String name, String gameName, int score, LocalDate date) {
-         if (head == null) return; // List is empty, nothing to delete.
+     private abstract class SlotIterator<T> implements Iterator<T> {
+         private int next = advance(0); // Next occupied slot, or values.length at the end.
+         private int last = -1;         // Slot returned by the last next(), or -1.
 
-         // Check if the head node is the one to be deleted.
-         ScoreEntry headData = head.data;
-         if (headData.getName().equals(name) && headData.getGameName().equals(gameName) &&
-             headData.getScore() == score && headData.getDate().equals(date)) {
-             head = head.next; // Update head to the next node.
-             return;
+         abstract T at(int slot);
+
+         private int advance(int slot) {
+             while (slot < values.length && (values[slot] == null || values[slot] == REMOVED)) slot++;
+             return slot;
          }
 
-         // Traverse the list to find the node to delete.
-         ScoreNode current = head;
-         ScoreNode prev = null;
-         while (current != null) {
-             ScoreEntry currentData = current.data;
-             if (currentData.getName().equals(name) && currentData.getGameName().equals(gameName) &&
-                 currentData.getScore() == score && currentData.getDate().equals(date)) {
-                 // Found the node to delete.
-                 if (prev != null) {
-                     prev.next = current.next; // Unlink the node from the list.
-                 }
-                 return; // Exit after deleting.
-             }
-             prev = current;
-             current = current.next;
+         @Override
+         public boolean hasNext() {
+             return next < values.length;
+         }
+
+         @Override
+         public T next() {
+             if (next >= values.length) throw new NoSuchElementException();
+             last = next;
+             next = advance(next + 1);
+             return at(last);
+         }
+
+         @Override
+         public void remove() {
+             if (last < 0) throw new IllegalStateException();
+             removeAt(last);
+             last = -1;
          }
      }
 
      /**
-      * Converts the linked list to an ArrayList of ScoreEntry objects.
-      * @return An ArrayList containing all ScoreEntry objects from the linked list.
+      * @return The slot holding a key, or -1 if the key is absent.
       */
-     public ArrayList<ScoreEntry> toArrayList() {
-         ArrayList<ScoreEntry> list = new ArrayList<>();
-         ScoreNode current = head;
-         while (current != null) { // Traverse the list.
-             list.add(current.data); // Add each entry to the ArrayList.
-             current = current.next;
+     private int find(long key) {
+         int mask = keys.length - 1;
+         for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+             ScoreEntry current = values[slot];
+             if (current == null) return -1;
+             if (current != REMOVED && keys[slot] == key) return slot;
          }
-         return list;
+     }
+
+     private void removeAt(int slot) {
+         values[slot] = REMOVED;
+         size--;
      }
 
      /**
-      * Clears all entries from the linked list by setting the head to null.
+      * Picks a key's home slot from the top bits of a multiplicative hash, which depend on every bit of the key.
       */
-     public void clear() {
-         head = null;
+     private int slotOf(long key) {
+         return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
      }
 
      /**
-      * Inner class representing a node in the ScoreLinkedList.
-      * Each node holds a ScoreEntry and a reference to the next node.
+      * @return The smallest power-of-two capacity that holds the given number of entries at most 1/2 full.
       */
-     static class ScoreNode {
-         ScoreEntry data;    // The ScoreEntry stored in this node.
-         ScoreNode next;     // Reference to the next node in the list.
+     private static int capacityFor(int entries) {
+         long needed = Math.max(MIN_CAPACITY, (long) entries * 2);
+         if (needed > 1 << 30) throw new IllegalStateException("LongScoreMap is too large: " + entries + " entries");
+         return Integer.highestOneBit((int) (needed - 1)) << 1;
+     }
 
-         public ScoreNode(ScoreEntry data) {
-             this.data = data;
-             this.next = null; // Initially, the next node is null.
+     private void allocate(int capacity) {
+         keys = new long[capacity];
+         values = new ScoreEntry[capacity];
+         shift = 64 - Integer.numberOfTrailingZeros(capacity);
+         size = 0;
+         used = 0;
+     }
+
+     /**
+      * Re-inserts every entry into a new table, dropping the removal markers.
+      */
+     private void rebuild(int capacity) {
+         long[] oldKeys = keys;
+         ScoreEntry[] oldValues = values;
+         allocate(capacity);
+         int mask = capacity - 1;
+         for (int i = 0; i < oldValues.length; i++) {
+             ScoreEntry entry = oldValues[i];
+             if (entry == null || entry == REMOVED) continue;
+             int slot = slotOf(oldKeys[i]);
+             while (values[slot] != null) slot = (slot + 1) & mask;
+             keys[slot] = oldKeys[i];
+             values[slot] = entry;
+             size++;
+             used++;
          }
      }
  }
 
  /**
-  * A Binary Search Tree (BST) implementation to store ScoreEntry objects.
-  * The BST is ordered by player name (String comparison).
+  * Storage for the columns of a ScoreTable: player id, game id, score and epoch day, one int each per row.
+  * The table keeps all row bookkeeping; a storage only holds the values and grows on request.
+  * HeapScoreColumns keeps them in int arrays; OffHeapScoreColumns keeps them in native memory, which the
+  * garbage collector neither scans nor copies ("leaderboard.offHeap=true").
   */
- static class ScoreBST {
-     private Node root; // Root of the BST.
+ abstract static class ScoreColumns {
+     // Keeps the application's score columns off the heap.
+     static final boolean OFF_HEAP = Boolean.getBoolean("leaderboard.offHeap");
 
      /**
-      * Inserts a ScoreEntry into the BST.
-      * If a ScoreEntry with the same player name already exists, its data is updated.
-      * @param entry The ScoreEntry to insert.
+      * @param capacity Initial number of rows.
+      * @return Empty columns of the kind selected with "leaderboard.offHeap".
       */
-     public void insert(ScoreEntry entry) {
-         root = insertRec(root, entry);
+     static ScoreColumns create(int capacity) {
+         return OFF_HEAP ? new OffHeapScoreColumns(capacity) : new HeapScoreColumns(capacity);
      }
 
      /**
-      * Recursive helper method for inserting a ScoreEntry into the BST.
-      * Ordering is based on player name.
-      * @param currentRoot The current root of the subtree to insert into.
-      * @param entry The ScoreEntry to insert.
-      * @return The root of the modified subtree.
+      * @return The number of rows the columns can hold.
       */
-     private Node insertRec(Node currentRoot, ScoreEntry entry) {
-         if (currentRoot == null) {
-             return new Node(entry);
+     abstract int capacity();
+
+     abstract int playerId(int row);
+     abstract int gameId(int row);
+     abstract int score(int row);
+     abstract int epochDay(int row);
+     abstract void setPlayerId(int row, int playerId);
+     abstract void setGameId(int row, int gameId);
+     abstract void setScore(int row, int score);
+     abstract void setEpochDay(int row, int epochDay);
+
+     /**
+      * Grows the columns, keeping the values of every row.
+      * @param capacity The new number of rows; larger than capacity().
+      */
+     abstract void grow(int capacity);
+ }
+
+ /**
+  * Score columns in int arrays on the heap.
+  */
+ static class HeapScoreColumns extends ScoreColumns {
+     private int[] playerIds;
+     private int[] gameIds;
+     private int[] scores;
+     private int[] epochDays;
+
+     HeapScoreColumns(int capacity) {
+         playerIds = new int[capacity];
+         gameIds = new int[capacity];
+         scores = new int[capacity];
+         epochDays = new int[capacity];
+     }
+
+     @Override int capacity() { return playerIds.length; }
+     @Override int playerId(int row) { return playerIds[row]; }
+     @Override int gameId(int row) { return gameIds[row]; }
+     @Override int score(int row) { return scores[row]; }
+     @Override int epochDay(int row) { return epochDays[row]; }
+     @Override void setPlayerId(int row, int playerId) { playerIds[row] = playerId; }
+     @Override void setGameId(int row, int gameId) { gameIds[row] = gameId; }
+     @Override void setScore(int row, int score) { scores[row] = score; }
+     @Override void setEpochDay(int row, int epochDay) { epochDays[row] = epochDay; }
+
+     @Override
+     void grow(int capacity) {
+         playerIds = Arrays.copyOf(playerIds, capacity);
+         gameIds = Arrays.copyOf(gameIds, capacity);
+         scores = Arrays.copyOf(scores, capacity);
+         epochDays = Arrays.copyOf(epochDays, capacity);
+     }
+ }
+
+ /**
+  * Score columns in native memory, read and written through native-order int views.
+  * The memory comes from the foreign memory API (a shared java.lang.foreign.Arena, looked up by reflection so the
+  * application still runs on JDKs without it) or, where that API is missing, from direct ByteBuffers.
+  * An arena's memory is freed as soon as the columns outgrow it; a direct buffer's when it is garbage collected.
+  * Each column is a single buffer, so the columns hold at most Integer.MAX_VALUE / 4 rows.
+  * Only these four columns move off the heap. The ScoreTable's hash index and free-row list, its player index and
+  * its rankings (AVL trees of int arrays) stay on the heap, and they take more memory than the columns: 16 bytes
+  * per row for the columns against roughly 60 for the rest (a 17-byte node in each of three trees, plus the index).
+  * The "offheap" benchmark checks these columns against the heap ones and reports which memory they use.
+  */
+ static class OffHeapScoreColumns extends ScoreColumns {
+     private static final int MAX_CAPACITY = Integer.MAX_VALUE / Integer.BYTES;
+
+     // Foreign memory API methods, or null where the API is not available.
+     private static final Method OPEN_ARENA;     // static Arena Arena.ofShared()
+     private static final Method ALLOCATE;       // MemorySegment Arena.allocate(long byteSize, long byteAlignment)
+     private static final Method AS_BYTE_BUFFER; // ByteBuffer MemorySegment.asByteBuffer()
+
+     static {
+         Method openArena = null;
+         Method allocate = null;
+         Method asByteBuffer = null;
+         try {
+             Class<?> arenaClass = Class.forName("java.lang.foreign.Arena");
+             openArena = arenaClass.getMethod("ofShared");
+             allocate = arenaClass.getMethod("allocate", long.class, long.class);
+             asByteBuffer = Class.forName("java.lang.foreign.MemorySegment").getMethod("asByteBuffer");
+             ((AutoCloseable) openArena.invoke(null)).close(); // Fails here rather than on first use if the API cannot be used.
+         } catch (Exception | LinkageError e) {
+             openArena = null; // Fall back to direct buffers.
          }
-         int nameComparison = entry.getName().compareTo(currentRoot.data.getName());
-         if (nameComparison < 0) {
-             currentRoot.left = insertRec(currentRoot.left, entry);
-         } else if (nameComparison > 0) {
-             currentRoot.right = insertRec(currentRoot.right, entry);
-         } else {
-             currentRoot.data = entry;
+         OPEN_ARENA = openArena;
+         ALLOCATE = allocate;
+         AS_BYTE_BUFFER = asByteBuffer;
+     }
+
+     private AutoCloseable arena; // Owns the columns' memory, or null if they are direct buffers.
+     private IntBuffer playerIds;
+     private IntBuffer gameIds;
+     private IntBuffer scores;
+     private IntBuffer epochDays;
+     private int capacity;
+
+     OffHeapScoreColumns(int capacity) {
+         allocate(capacity);
+     }
+
+     /**
+      * @return Where off-heap columns get their memory: "foreign memory" or "direct buffers".
+      */
+     static String memorySource() {
+         return OPEN_ARENA != null ? "foreign memory" : "direct buffers";
+     }
+
+     @Override int capacity() { return capacity; }
+     @Override int playerId(int row) { return playerIds.get(row); }
+     @Override int gameId(int row) { return gameIds.get(row); }
+     @Override int score(int row) { return scores.get(row); }
+     @Override int epochDay(int row) { return epochDays.get(row); }
+     @Override void setPlayerId(int row, int playerId) { playerIds.put(row, playerId); }
+     @Override void setGameId(int row, int gameId) { gameIds.put(row, gameId); }
+     @Override void setScore(int row, int score) { scores.put(row, score); }
+     @Override void setEpochDay(int row, int epochDay) { epochDays.put(row, epochDay); }
+
+     @Override
+     void grow(int capacity) {
+         AutoCloseable oldArena = arena;
+         IntBuffer[] old = {playerIds, gameIds, scores, epochDays};
+         int rows = this.capacity;
+         allocate(capacity);
+         IntBuffer[] grown = {playerIds, gameIds, scores, epochDays};
+         for (int i = 0; i < old.length; i++) {
+             IntBuffer source = old[i].duplicate();
+             source.limit(rows);
+             grown[i].duplicate().put(source);
+         }
+         if (oldArena != null) {
+             try {
+                 oldArena.close(); // Frees the old columns now.
+             } catch (Exception e) {
+                 throw new IllegalStateException("Could not free the old score columns", e);
+             }
          }
-         return currentRoot;
      }
 
      /**
-      * Finds a ScoreEntry in the BST by player name.
-      * @param name The player name to search for.
-      * @return The ScoreEntry if found, otherwise null.
+      * Replaces the columns with new, zeroed ones of the given capacity (in a new arena, if arenas are used).
       */
-     public ScoreEntry findByName(String name) {
-         Node current = root;
-         while (current != null) {
-             int cmp = name.compareTo(current.data.getName());
-             if (cmp == 0) return current.data;
-             current = (cmp < 0) ? current.left : current.right;
+     private void allocate(int capacity) {
+         if (capacity > MAX_CAPACITY) throw new IllegalStateException("Too many rows for off-heap score columns: " + capacity);
+         long bytes = (long) capacity * Integer.BYTES;
+         try {
+             arena = OPEN_ARENA != null ? (AutoCloseable) OPEN_ARENA.invoke(null) : null;
+             playerIds = column(bytes);
+             gameIds = column(bytes);
+             scores = column(bytes);
+             epochDays = column(bytes);
+         } catch (ReflectiveOperationException e) {
+             throw new IllegalStateException("Could not allocate off-heap score columns", e);
          }
-         return null;
+         this.capacity = capacity;
      }
 
      /**
-      * Deletes a ScoreEntry from the BST based on player name.
-      * @param name The player name of the entry to delete.
+      * @return A new zeroed column of the given size in the current arena, or a direct buffer if there is none.
       */
-     public void delete(String name) {
-         root = deleteRec(root, name);
+     private IntBuffer column(long bytes) throws ReflectiveOperationException {
+         ByteBuffer buffer = arena != null
+                 ? (ByteBuffer) AS_BYTE_BUFFER.invoke(ALLOCATE.invoke(arena, bytes, (long) Integer.BYTES))
+                 : ByteBuffer.allocateDirect((int) bytes);
+         return buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
      }
+ }
+
+ /**
+  * The application's in-memory scores as a column store: one row per entry, with parallel int columns
+  * for the player id, game id, score and epoch day. A row freed by a removal goes onto a free-row list
+  * and is reused by the next insertion. Rows are found by composite key (see ScoreEntry.key()) through an
+  * open-addressing index of row numbers; the key itself is not stored but recomputed from the id columns.
+  * No object is kept per entry: a ScoreEntry handed out by get(), values() or view() is a transient copy
+  * of its row, so a changed entry must be written back with put(). The columns live in a ScoreColumns
+  * storage, on the heap or off it; the index and the free-row list always stay on the heap.
+  * The sort, filter and aggregate operations (sortedRows(), removeRows(), countByPlayer(), ...) run as
+  * loops over the columns; which games have entries is answered from a per-game count kept by put() and remove(); lookups by player name go through a PlayerIndex, and the leaderboard order of
+  * each game and of all games is kept in order-statistic RowTrees (rankings), all updated in O(log n) per change. As a Map&lt;Long, ScoreEntry&gt; it can also be filled by the loaders; the Map
+  * methods box their keys, so hot paths use the long overloads. Iterators are not fail-fast.
+  */
+ static class ScoreTable extends AbstractMap<Long, ScoreEntry> {
+     private static final int MIN_CAPACITY = 16; // Must be a power of two.
+     private static final int FREE = -1;          // Player id of a free row.
+     private static final int REMOVED = -1;       // Index slot whose row was removed (0 = never used).
+
+     private final ScoreColumns columns;                // Player id, game id, score and epoch day of each row.
+     private int rowLimit;                              // Rows in use or on the free list; rows from here on are unused.
+     private int[] freeRows = new int[MIN_CAPACITY];    // Free-row list (a stack of row numbers).
+     private int freeCount;
+     private int size;                                  // Number of live rows.
+
+     private int[] index = new int[MIN_CAPACITY * 2];   // Row + 1 of each slot, 0 if never used, REMOVED if removed.
+     private int indexUsed;                             // Slots that are not 0.
+     private int shift = 64 - Integer.numberOfTrailingZeros(MIN_CAPACITY * 2); // The hash's top bits pick the slot.
+
+     private final PlayerIndex players;                 // Every live row, ordered by player name and game name.
+     private RowTree[] rankings = new RowTree[0];       // By game id: the game's live rows in leaderboard order, or null.
+     private int[] gameCounts = new int[0];             // By game id: the game's number of live rows.
+     private final RowTree overallRanking;              // Every live row in leaderboard order ("All Games").
+     private boolean indexesStale;                      // True after a bulk load until players and rankings are next used and rebuilt.
 
      /**
-      * Recursive helper method for deleting a ScoreEntry from the BST by name.
-      * @param currentRoot The current root of the subtree to delete from.
-      * @param name The player name to delete.
-      * @return The root of the modified subtree.
+      * Creates an empty table with its columns on the heap.
       */
-     private Node deleteRec(Node currentRoot, String name) {
-         if (currentRoot == null) return null;
-         int cmp = name.compareTo(currentRoot.data.getName());
-         if (cmp < 0) {
-             currentRoot.left = deleteRec(currentRoot.left, name);
-         } else if (cmp > 0) {
-             currentRoot.right = deleteRec(currentRoot.right, name);
-         } else {
-             if (currentRoot.left == null) return currentRoot.right;
-             if (currentRoot.right == null) return currentRoot.left;
-             Node minNode = findMin(currentRoot.right);
-             currentRoot.data = minNode.data;
-             currentRoot.right = deleteRec(currentRoot.right, minNode.data.getName());
-         }
-         return currentRoot;
+     public ScoreTable() {
+         this(new HeapScoreColumns(MIN_CAPACITY));
      }
 
      /**
-      * Finds the node with the minimum value (leftmost node) in a given subtree.
-      * @param node The root of the subtree.
-      * @return The node with the minimum value.
+      * Creates an empty table over the given column storage.
+      * @param columns Empty columns; the table takes ownership of them.
       */
-     private Node findMin(Node node) {
-         while (node.left != null) {
-             node = node.left;
-         }
-         return node;
+     public ScoreTable(ScoreColumns columns) {
+         this.columns = columns;
+         this.players = new PlayerIndex(columns);
+         this.overallRanking = new RowTree(this::compareRows);
      }
 
      /**
-      * Clears all entries from the BST by setting the root to null.
+      * @param key A composite key.
+      * @return The row holding the key, or -1 if there is none.
       */
-     public void clear() {
-         root = null;
+     public int findRow(long key) {
+         int slot = findSlot(key);
+         return slot < 0 ? -1 : index[slot] - 1;
      }
 
      /**
-      * Inner class representing a node in the ScoreBST.
-      * Each node holds a ScoreEntry and references to left and right children.
+      * @param key A composite key.
+      * @return A copy of the entry with that key, or null if there is none.
       */
-     static class Node {
-         ScoreEntry data;    // The ScoreEntry stored in this node.
-         Node left, right;   // References to left and right child nodes.
+     public ScoreEntry get(long key) {
+         int row = findRow(key);
+         return row < 0 ? null : view(row);
+     }
+
+     public boolean containsKey(long key) {
+         return findSlot(key) >= 0;
+     }
 
-         public Node(ScoreEntry data) {
-             this.data = data;
-             left = right = null; // Initialize children to null.
+     /**
+      * Stores an entry's score and date in the row of its key, adding a row if the key is new.
+      * @param key The entry's composite key (must be entry.getKey()).
+      * @param entry The entry; it is copied into the columns, not kept.
+      * @return A copy of the entry the key had before, or null if it was absent.
+      */
+     public ScoreEntry put(long key, ScoreEntry entry) {
+         if (key != entry.getKey()) throw new IllegalArgumentException("Key does not match the entry");
+         int row = findRow(key);
+         if (row >= 0) {
+             ScoreEntry previous = view(row);
+             if (entry.score != previous.score || entry.epochDay != previous.epochDay) {
+                 // The row's leaderboard position depends on its score and date: take it out of its game's
+                 // ranking while they change and put it back where they now place it.
+                 RowTree ranking = indexesStale ? null : rankingOf(previous.gameId);
+                 if (ranking != null) {
+                     ranking.remove(row);
+                     overallRanking.remove(row);
+                 }
+                 columns.setScore(row, entry.score);
+                 columns.setEpochDay(row, entry.epochDay);
+                 if (ranking != null) {
+                     ranking.insert(row);
+                     overallRanking.insert(row);
+                 }
+             }
+             return previous;
+         }
+         row = allocateRow();
+         columns.setPlayerId(row, entry.nameId);
+         columns.setGameId(row, entry.gameId);
+         columns.setScore(row, entry.score);
+         columns.setEpochDay(row, entry.epochDay);
+         size++;
+         countGame(entry.gameId, 1);
+         insertIntoIndex(row, key);
+         if (!indexesStale) {
+             players.insert(row);
+             rankingOf(entry.gameId).insert(row);
+             overallRanking.insert(row);
+         }
+         return null;
+     }
+
+     /**
+      * @param key A composite key.
+      * @return A copy of the removed entry, or null if the key was absent.
+      */
+     public ScoreEntry remove(long key) {
+         int slot = findSlot(key);
+         if (slot < 0) return null;
+         int row = index[slot] - 1;
+         ScoreEntry removed = view(row);
+         index[slot] = REMOVED;
+         countGame(removed.gameId, -1);
+         if (!indexesStale) {
+             players.remove(row);
+             rankings[columns.gameId(row)].remove(row);
+             overallRanking.remove(row);
+         }
+         freeRow(row);
+         return removed;
+     }
+
+     @Override
+     public ScoreEntry get(Object key) {
+         return key instanceof Long ? get((long) (Long) key) : null;
+     }
+
+     @Override
+     public boolean containsKey(Object key) {
+         return key instanceof Long && containsKey((long) (Long) key);
+     }
+
+     @Override
+     public ScoreEntry put(Long key, ScoreEntry entry) {
+         return put((long) key, entry);
+     }
+
+     @Override
+     public ScoreEntry remove(Object key) {
+         return key instanceof Long ? remove((long) (Long) key) : null;
+     }
+
+     @Override
+     public void putAll(Map<? extends Long, ? extends ScoreEntry> map) {
+         // A bulk load at least doubling the table rebuilds the player index and the rankings once, when they
+         // are next used, instead of rebalancing them for every entry.
+         if (map.size() > size) indexesStale = true;
+         ensureCapacity(size + map.size());
+         for (ScoreEntry entry : map.values()) put(entry.getKey(), entry);
+     }
+
+     @Override
+     public int size() {
+         return size;
+     }
+
+     @Override
+     public void clear() {
+         rowLimit = 0;
+         freeCount = 0;
+         size = 0;
+         Arrays.fill(index, 0); // Keeps the capacity, like HashMap.clear().
+         indexUsed = 0;
+         players.clear();
+         rankings = new RowTree[0];
+         gameCounts = new int[0];
+         overallRanking.clear();
+         indexesStale = false;
+     }
+
+     /**
+      * @param playerName A player name, matched case-insensitively.
+      * @return Copies of the player's entries, ordered by player name and game name.
+      */
+     public ArrayList<ScoreEntry> findAllByPlayer(String playerName) {
+         ArrayList<ScoreEntry> found = new ArrayList<>();
+         playerIndex().findAllByPlayer(playerName, row -> found.add(view(row)));
+         return found;
+     }
+
+     /**
+      * Removes every entry of one player, found through the player index in O(k log n) for k entries
+      * rather than by a pass over all rows. Only entries in the table are seen: with lazy loading, the caller
+      * must load the player's games first.
+      * @param playerId A player id in ScoreEntry.PLAYER_NAMES, or -1.
+      * @return Copies of the removed entries, ordered by game name.
+      */
+     public ArrayList<ScoreEntry> removePlayer(int playerId) {
+         ArrayList<ScoreEntry> removed = new ArrayList<>();
+         if (playerId < 0) return removed;
+         // Collect the rows first: removing them changes the index being walked. The index matches names
+         // case-insensitively, so rows of other spellings of the name are skipped.
+         int[][] rows = {new int[8]};
+         int[] count = {0};
+         playerIndex().findAllByPlayer(ScoreEntry.PLAYER_NAMES.nameOf(playerId), row -> {
+             if (columns.playerId(row) != playerId) return;
+             if (count[0] == rows[0].length) rows[0] = Arrays.copyOf(rows[0], count[0] * 2);
+             rows[0][count[0]++] = row;
+         });
+         for (int i = 0; i < count[0]; i++) {
+             int row = rows[0][i];
+             removed.add(view(row));
+             remove(ScoreEntry.key(playerId, columns.gameId(row)));
+         }
+         return removed;
+     }
+
+     /**
+      * @param prefix A player name prefix, matched case-insensitively.
+      * @return Copies of the entries of every player whose name starts with the prefix, ordered by player name and game name.
+      */
+     public ArrayList<ScoreEntry> findByPlayerPrefix(String prefix) {
+         ArrayList<ScoreEntry> found = new ArrayList<>();
+         playerIndex().scanPrefix(prefix, row -> found.add(view(row)));
+         return found;
+     }
+
+     /**
+      * @param playerName A player name, matched case-insensitively.
+      * @return The player's rows in leaderboard order: found through the player index and sorted, in
+      *         O(log n + k log k) for k rows.
+      */
+     public PrimitiveIterator.OfInt playerRows(String playerName) {
+         int[][] rows = {new int[8]};
+         int[] count = {0};
+         playerIndex().findAllByPlayer(playerName, row -> {
+             if (count[0] == rows[0].length) rows[0] = Arrays.copyOf(rows[0], count[0] * 2);
+             rows[0][count[0]++] = row;
+         });
+         int[] sorted = Arrays.copyOf(rows[0], count[0]);
+         sortRows(sorted, this::compareRows);
+         return Arrays.stream(sorted).iterator();
+     }
+
+     /**
+      * Copies the values of rows, so they can be read on another thread while the table keeps changing.
+      * @param rows Live rows, in the order to keep.
+      * @param limit The most rows to copy, or 0 for all of them.
+      * @return The copied entries, in the same order.
+      */
+     public ScoreList copyRows(PrimitiveIterator.OfInt rows, long limit) {
+         ScoreList copy = new ScoreList();
+         while (rows.hasNext() && (limit == 0 || copy.size() < limit)) {
+             int row = rows.nextInt();
+             copy.add(columns.playerId(row), columns.score(row), columns.epochDay(row), columns.gameId(row));
+         }
+         return copy;
+     }
+
+     /**
+      * Score entries packed four ints each (player id, score, epoch day, game id), such as a copy of table
+      * rows handed to another thread. Entries are only added while the list is built; iterating creates one
+      * ScoreEntry per entry as it is reached.
+      */
+     static class ScoreList implements Iterable<ScoreEntry> {
+         private int[] values = new int[64]; // Four ints per entry.
+         private int size;                   // Number of entries.
+
+         void add(int playerId, int score, int epochDay, int gameId) {
+             if (4 * size == values.length) values = Arrays.copyOf(values, values.length * 2);
+             values[4 * size] = playerId;
+             values[4 * size + 1] = score;
+             values[4 * size + 2] = epochDay;
+             values[4 * size + 3] = gameId;
+             size++;
+         }
+
+         public int size() {
+             return size;
+         }
+
+         @Override
+         public Iterator<ScoreEntry> iterator() {
+             return new Iterator<ScoreEntry>() {
+                 private int next; // Index of the next entry.
+
+                 @Override
+                 public boolean hasNext() {
+                     return next < size;
+                 }
+
+                 @Override
+                 public ScoreEntry next() {
+                     if (next >= size) throw new NoSuchElementException();
+                     int at = 4 * next++;
+                     return new ScoreEntry(values[at], values[at + 1], values[at + 2], values[at + 3]);
+                 }
+             };
+         }
+     }
+
+     /**
+      * @return The index of the live rows by player name and game name.
+      */
+     public PlayerIndex playerIndex() {
+         ensureIndexes();
+         return players;
+     }
+
+     /**
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @return The game's live rows in leaderboard order; an empty tree for a game without entries.
+      *         The tree is kept current by the table and must not be changed by the caller.
+      */
+     public RowTree ranking(int gameId) {
+         ensureIndexes();
+         if (gameId < 0) return new RowTree(this::compareRows);
+         return rankingOf(gameId);
+     }
+
+     /**
+      * The competition rank of an entry in its game: one more than the number of the game's entries with a higher
+      * score, or the same score and a later date. Entries tied on both share a rank, and the ranks after them are
+      * skipped (1, 2, 2, 4). Counted on the game's ranking in O(log n).
+      * @param key A composite key.
+      * @return The rank (1 is best), or 0 if the key is absent.
+      */
+     public int rankInGame(long key) {
+         int row = findRow(key);
+         if (row < 0) return 0;
+         int score = columns.score(row);
+         int epochDay = columns.epochDay(row);
+         return 1 + ranking(columns.gameId(row)).countBefore(other -> {
+             int otherScore = columns.score(other);
+             return otherScore > score || (otherScore == score && columns.epochDay(other) > epochDay);
+         });
+     }
+
+     /**
+      * @param key A composite key.
+      * @return The entry's index in its game's leaderboard order (0 is first), or -1 if the key is absent.
+      */
+     public int positionInGame(long key) {
+         int row = findRow(key);
+         return row < 0 ? -1 : ranking(columns.gameId(row)).rank(row);
+     }
+
+     /**
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @param position An index in the game's leaderboard order (0 is first).
+      * @return A copy of the entry at that index, or null if the game has no entry there.
+      */
+     public ScoreEntry entryAtPosition(int gameId, int position) {
+         RowTree ranking = ranking(gameId);
+         return position < 0 || position >= ranking.size() ? null : view(ranking.rowAt(position));
+     }
+
+     /**
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @return The game's rows in leaderboard order, read from its ranking without sorting.
+      */
+     public PrimitiveIterator.OfInt leaderboardRows(int gameId) {
+         return rowsOf(ranking(gameId));
+     }
+
+     private static PrimitiveIterator.OfInt rowsOf(RowTree ranking) {
+         RowTree.Cursor cursor = ranking.cursorAt(0);
+         return new PrimitiveIterator.OfInt() {
+             @Override
+             public boolean hasNext() {
+                 return cursor.hasNext();
+             }
+
+             @Override
+             public int nextInt() {
+                 return cursor.next();
+             }
+         };
+     }
+
+     /**
+      * @return Every live row in leaderboard order (the "All Games" ranking); kept current by the table and
+      *         must not be changed by the caller.
+      */
+     public RowTree ranking() {
+         ensureIndexes();
+         return overallRanking;
+     }
+
+     /**
+      * @return Every live row in leaderboard order, read from the overall ranking without sorting.
+      */
+     public PrimitiveIterator.OfInt leaderboardRows() {
+         return rowsOf(ranking());
+     }
+
+     /**
+      * @return Copies of every entry in leaderboard order, made one at a time as the iteration reaches them.
+      */
+     public Iterable<ScoreEntry> leaderboard() {
+         return () -> views(leaderboardRows());
+     }
+
+     /**
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @return Copies of the game's entries in leaderboard order, made one at a time as the iteration reaches them.
+      */
+     public Iterable<ScoreEntry> leaderboard(int gameId) {
+         return () -> views(leaderboardRows(gameId));
+     }
+
+     /**
+      * The first entries of a game's leaderboard, read from the front of its ranking in O(log n + k).
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @param k The most entries to return.
+      * @return Copies of the game's first k entries (fewer if it has fewer) in leaderboard order.
+      */
+     public ArrayList<ScoreEntry> topK(int gameId, int k) {
+         RowTree ranking = ranking(gameId);
+         ArrayList<ScoreEntry> top = new ArrayList<>(Math.min(Math.max(k, 0), ranking.size()));
+         for (RowTree.Cursor cursor = ranking.cursorAt(0); cursor.hasNext() && top.size() < k; ) top.add(view(cursor.next()));
+         return top;
+     }
+
+     private Iterator<ScoreEntry> views(PrimitiveIterator.OfInt rows) {
+         return new Iterator<ScoreEntry>() {
+             @Override
+             public boolean hasNext() {
+                 return rows.hasNext();
+             }
+
+             @Override
+             public ScoreEntry next() {
+                 return view(rows.nextInt());
+             }
+         };
+     }
+
+     /**
+      * @return The ranking of a game, created empty if the game has none yet.
+      */
+     private RowTree rankingOf(int gameId) {
+         if (gameId >= rankings.length) rankings = Arrays.copyOf(rankings, Math.max(gameId + 1, ScoreEntry.GAME_NAMES.size()));
+         RowTree ranking = rankings[gameId];
+         if (ranking == null) {
+             ranking = new RowTree(this::compareRows);
+             rankings[gameId] = ranking;
+         }
+         return ranking;
+     }
+
+     /**
+      * Rebuilds the player index and the rankings from the columns if a bulk load left them stale:
+      * one sort of every row into leaderboard order, split by game into balanced rankings.
+      */
+     private void ensureIndexes() {
+         if (!indexesStale) return;
+         int[] liveRows = sortedRows(null);
+         int[] counts = new int[ScoreEntry.GAME_NAMES.size()];
+         for (int row : liveRows) counts[columns.gameId(row)]++;
+         int[][] gameRows = new int[counts.length][];
+         for (int gameId = 0; gameId < counts.length; gameId++) {
+             if (counts[gameId] > 0) gameRows[gameId] = new int[counts[gameId]];
+         }
+         Arrays.fill(counts, 0);
+         for (int row : liveRows) {
+             int gameId = columns.gameId(row);
+             gameRows[gameId][counts[gameId]++] = row;
+         }
+         rankings = new RowTree[counts.length];
+         for (int gameId = 0; gameId < counts.length; gameId++) {
+             if (gameRows[gameId] != null) rankingOf(gameId).rebuild(gameRows[gameId], counts[gameId]);
+         }
+         overallRanking.rebuild(liveRows, liveRows.length);
+         players.rebuild(liveRows); // Sorts liveRows by player.
+         indexesStale = false;
+     }
+
+     /**
+      * @param row A live row.
+      * @return A new ScoreEntry holding the row's values.
+      */
+     public ScoreEntry view(int row) {
+         return new ScoreEntry(columns.playerId(row), columns.score(row), columns.epochDay(row), columns.gameId(row));
+     }
+
+     // Column access for loops over rows; every row below rowLimit() that isLive() holds an entry.
+     public int rowLimit() { return rowLimit; }
+     public boolean isLive(int row) { return columns.playerId(row) != FREE; }
+     public int playerId(int row) { return columns.playerId(row); }
+     public int gameId(int row) { return columns.gameId(row); }
+     public int score(int row) { return columns.score(row); }
+     public int epochDay(int row) { return columns.epochDay(row); }
+
+     /**
+      * @param gameId A game id in ScoreEntry.GAME_NAMES, or -1.
+      * @return True if any entry belongs to the game.
+      */
+     public boolean containsGame(int gameId) {
+         return gameId >= 0 && gameId < gameCounts.length && gameCounts[gameId] > 0;
+     }
+
+     /**
+      * @return The names of the games that have at least one entry, from the per-game counts
+      *         (one step per known game, not per row).
+      */
+     public HashSet<String> gameNames() {
+         HashSet<String> names = new HashSet<>();
+         for (int id = 0; id < gameCounts.length; id++) {
+             if (gameCounts[id] > 0) names.add(ScoreEntry.GAME_NAMES.nameOf(id));
+         }
+         return names;
+     }
+
+     /**
+      * Adds to the live-row count of a game, growing the counts for a game id not seen before.
+      */
+     private void countGame(int gameId, int delta) {
+         if (gameId >= gameCounts.length) gameCounts = Arrays.copyOf(gameCounts, Math.max(gameId + 1, ScoreEntry.GAME_NAMES.size()));
+         gameCounts[gameId] += delta;
+     }
+
+     /**
+      * Counts the entries of every player.
+      * @return Player name -> number of entries, for players with at least one.
+      */
+     public HashMap<String, Integer> countByPlayer() {
+         int[] counts = new int[ScoreEntry.PLAYER_NAMES.size()];
+         for (int row = 0; row < rowLimit; row++) {
+             if (columns.playerId(row) != FREE) counts[columns.playerId(row)]++;
+         }
+         HashMap<String, Integer> byName = new HashMap<>();
+         for (int id = 0; id < counts.length; id++) {
+             if (counts[id] > 0) byName.put(ScoreEntry.PLAYER_NAMES.nameOf(id), counts[id]);
+         }
+         return byName;
+     }
+
+     /**
+      * Removes every entry whose row passes a test.
+      * @param test Tested with each live row (read its columns through the accessors).
+      * @return Copies of the removed entries, in row order.
+      */
+     public ArrayList<ScoreEntry> removeRows(IntPredicate test) {
+         ArrayList<ScoreEntry> removed = new ArrayList<>();
+         for (int row = 0; row < rowLimit; row++) {
+             if (columns.playerId(row) == FREE || !test.test(row)) continue;
+             removed.add(view(row));
+             remove(ScoreEntry.key(columns.playerId(row), columns.gameId(row)));
+         }
+         return removed;
+     }
+
+     /**
+      * Selects the live rows that pass a test and sorts them in leaderboard order (score descending, then
+      * date descending, then player name and game name ascending, as ScoreEntry.LEADERBOARD_ORDER).
+      * Names are only compared between rows with the same score and date.
+      * @param test Tested with each live row, or null to select every row.
+      * @return The selected row numbers in leaderboard order.
+      */
+     public int[] sortedRows(IntPredicate test) {
+         int[] rows = new int[size];
+         int count = 0;
+         for (int row = 0; row < rowLimit; row++) {
+             if (columns.playerId(row) != FREE && (test == null || test.test(row))) rows[count++] = row;
+         }
+         rows = Arrays.copyOf(rows, count);
+         sortRows(rows, this::compareRows);
+         return rows;
+     }
+
+     /**
+      * Sorts row numbers with a stable merge sort.
+      * @param rows The rows, sorted in place.
+      * @param order Compares two rows.
+      */
+     static void sortRows(int[] rows, IntBinaryOperator order) {
+         mergeSortRows(rows, new int[rows.length], 0, rows.length, order);
+     }
+
+     /**
+      * A stable top-down merge sort of rows[from, to), using buffer as scratch space.
+      */
+     private static void mergeSortRows(int[] rows, int[] buffer, int from, int to, IntBinaryOperator order) {
+         if (to - from < 2) return;
+         int mid = (from + to) >>> 1;
+         mergeSortRows(rows, buffer, from, mid, order);
+         mergeSortRows(rows, buffer, mid, to, order);
+         if (order.applyAsInt(rows[mid - 1], rows[mid]) <= 0) return; // Already in order.
+         System.arraycopy(rows, from, buffer, from, to - from);
+         int left = from;
+         int right = mid;
+         for (int i = from; i < to; i++) {
+             if (right >= to || (left < mid && order.applyAsInt(buffer[left], buffer[right]) <= 0)) {
+                 rows[i] = buffer[left++];
+             } else {
+                 rows[i] = buffer[right++];
+             }
+         }
+     }
+
+     /**
+      * Compares two rows in leaderboard order.
+      */
+     private int compareRows(int a, int b) {
+         int scoreA = columns.score(a);
+         int scoreB = columns.score(b);
+         if (scoreA != scoreB) return scoreA > scoreB ? -1 : 1;
+         int dayA = columns.epochDay(a);
+         int dayB = columns.epochDay(b);
+         if (dayA != dayB) return dayA > dayB ? -1 : 1;
+         int playerA = columns.playerId(a);
+         int playerB = columns.playerId(b);
+         if (playerA != playerB) return ScoreEntry.PLAYER_NAMES.nameOf(playerA).compareTo(ScoreEntry.PLAYER_NAMES.nameOf(playerB));
+         int gameA = columns.gameId(a);
+         int gameB = columns.gameId(b);
+         if (gameA == gameB) return 0;
+         return ScoreEntry.GAME_NAMES.nameOf(gameA).compareTo(ScoreEntry.GAME_NAMES.nameOf(gameB));
+     }
+
+     @Override
+     public Set<Map.Entry<Long, ScoreEntry>> entrySet() {
+         return new AbstractSet<Map.Entry<Long, ScoreEntry>>() {
+             @Override
+             public Iterator<Map.Entry<Long, ScoreEntry>> iterator() {
+                 return new RowIterator<Map.Entry<Long, ScoreEntry>>() {
+                     @Override
+                     Map.Entry<Long, ScoreEntry> at(int row) {
+                         return new AbstractMap.SimpleImmutableEntry<>(ScoreEntry.key(columns.playerId(row), columns.gameId(row)), view(row));
+                     }
+                 };
+             }
+
+             @Override
+             public int size() {
+                 return size;
+             }
+         };
+     }
+
+     @Override
+     public Collection<ScoreEntry> values() {
+         return new AbstractCollection<ScoreEntry>() {
+             @Override
+             public Iterator<ScoreEntry> iterator() {
+                 return new RowIterator<ScoreEntry>() {
+                     @Override
+                     ScoreEntry at(int row) {
+                         return view(row);
+                     }
+                 };
+             }
+
+             @Override
+             public int size() {
+                 return size;
+             }
+         };
+     }
+
+     /**
+      * Iterates over the live rows. remove() frees the current row; rows are never moved, so iteration continues safely.
+      */
+     private abstract class RowIterator<T> implements Iterator<T> {
+         private int next = advance(0); // Next live row, or rowLimit at the end.
+         private int last = -1;         // Row returned by the last next(), or -1.
+
+         abstract T at(int row);
+
+         private int advance(int row) {
+             while (row < rowLimit && columns.playerId(row) == FREE) row++;
+             return row;
+         }
+
+         @Override
+         public boolean hasNext() {
+             return next < rowLimit;
+         }
+
+         @Override
+         public T next() {
+             if (next >= rowLimit) throw new NoSuchElementException();
+             last = next;
+             next = advance(next + 1);
+             return at(last);
+         }
+
+         @Override
+         public void remove() {
+             if (last < 0) throw new IllegalStateException();
+             ScoreTable.this.remove(ScoreEntry.key(columns.playerId(last), columns.gameId(last)));
+             last = -1;
+         }
+     }
+
+     /**
+      * @return The index slot holding a key's row, or -1 if the key is absent.
+      */
+     private int findSlot(long key) {
+         int mask = index.length - 1;
+         for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+             int entry = index[slot];
+             if (entry == 0) return -1;
+             if (entry != REMOVED && ScoreEntry.key(columns.playerId(entry - 1), columns.gameId(entry - 1)) == key) return slot;
+         }
+     }
+
+     private void insertIntoIndex(int row, long key) {
+         int mask = index.length - 1;
+         int slot = slotOf(key);
+         while (index[slot] > 0) slot = (slot + 1) & mask; // Reuses the first removed or never-used slot.
+         if (index[slot] == 0) indexUsed++;
+         index[slot] = row + 1;
+         if (indexUsed * 4L > index.length * 3L) rebuildIndex(indexCapacityFor(size)); // Over 3/4 full.
+     }
+
+     /**
+      * Picks a key's home slot from the top bits of a multiplicative hash, which depend on every bit of the key.
+      * The multiplier differs from LongScoreMap's: with the same hash, copying a LongScoreMap into a smaller
+      * table in its slot order would pile the keys into a few long probe runs.
+      */
+     private int slotOf(long key) {
+         return (int) ((key * 0xC2B2AE3D27D4EB4FL) >>> shift);
+     }
+
+     /**
+      * Returns a free row, growing the columns when there is none.
+      */
+     private int allocateRow() {
+         if (freeCount > 0) return freeRows[--freeCount];
+         if (rowLimit == columns.capacity()) columns.grow(rowLimit * 2);
+         return rowLimit++;
+     }
+
+     private void freeRow(int row) {
+         columns.setPlayerId(row, FREE);
+         if (freeCount == freeRows.length) freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+         freeRows[freeCount++] = row;
+         size--;
+     }
+
+     /**
+      * Makes room for a number of entries without further growth of the columns or the index.
+      */
+     private void ensureCapacity(int entries) {
+         if (entries > columns.capacity()) columns.grow(entries);
+         int capacity = indexCapacityFor(entries);
+         if (capacity > index.length) rebuildIndex(capacity);
+     }
+
+     /**
+      * @return The smallest power-of-two index capacity that holds the given number of rows at most 1/2 full.
+      */
+     private static int indexCapacityFor(int entries) {
+         long needed = Math.max(MIN_CAPACITY * 2, (long) entries * 2);
+         if (needed > 1 << 30) throw new IllegalStateException("ScoreTable is too large: " + entries + " entries");
+         return Integer.highestOneBit((int) (needed - 1)) << 1;
+     }
+
+     /**
+      * Re-inserts every live row into a new index, dropping the removal markers.
+      */
+     private void rebuildIndex(int capacity) {
+         index = new int[capacity];
+         shift = 64 - Integer.numberOfTrailingZeros(capacity);
+         indexUsed = 0;
+         int mask = capacity - 1;
+         for (int row = 0; row < rowLimit; row++) {
+             if (columns.playerId(row) == FREE) continue;
+             int slot = slotOf(ScoreEntry.key(columns.playerId(row), columns.gameId(row)));
+             while (index[slot] != 0) slot = (slot + 1) & mask;
+             index[slot] = row + 1;
+             indexUsed++;
+         }
+     }
+ }
+
+ /**
+  * An order-statistic AVL tree over the rows of a ScoreTable, in the order of a row comparator.
+  * Nodes live in parallel int arrays (row, left child, right child, subtree size, height) with a free-node list,
+  * like the table's own columns; a node's keys are read from the table's columns by the comparator.
+  * Insertion, removal, rank(), rowAt() and countBefore() take O(log n); a Cursor walks the rows in order from any position.
+  * A row's keys must not change while it is in the tree, and a row must be removed before the table frees it.
+  */
+ static class RowTree {
+     private static final int NIL = -1; // No node.
+
+     private final IntBinaryOperator order; // Compares two rows.
+     private int[] rows = new int[16];      // Table row of each node.
+     private int[] left = new int[16];      // Left child of each node, or the next free node for a free node.
+     private int[] right = new int[16];     // Right child of each node.
+     private int[] sizes = new int[16];     // Number of nodes in each node's subtree.
+     private byte[] heights = new byte[16];
+     private int nodeLimit;                 // Nodes in use or on the free list; nodes from here on are unused.
+     private int freeNode = NIL;            // Head of the free-node list.
+     private int root = NIL;
+     private boolean removed;               // Set by remove(int, int) when it finds the row.
+
+     RowTree(IntBinaryOperator order) {
+         this.order = order;
+     }
+
+     public int size() {
+         return sizeOf(root);
+     }
+
+     public void clear() {
+         nodeLimit = 0;
+         freeNode = NIL;
+         root = NIL;
+     }
+
+     /**
+      * Adds a row, which must not be in the tree yet.
+      */
+     public void insert(int row) {
+         root = insert(root, row);
+     }
+
+     /**
+      * Removes a row.
+      * @return False if the row was not in the tree.
+      */
+     public boolean remove(int row) {
+         removed = false;
+         root = remove(root, row);
+         return removed;
+     }
+
+     /**
+      * Replaces the contents with rows that are already in order, building a perfectly balanced tree in O(n).
+      * @param sortedRows The rows, in the tree's order.
+      * @param count The number of rows to take from the start of sortedRows.
+      */
+     public void rebuild(int[] sortedRows, int count) {
+         clear();
+         ensureNodeCapacity(count);
+         root = build(sortedRows, 0, count);
+     }
+
+     /**
+      * @param row A row in the tree.
+      * @return The number of rows before it.
+      */
+     public int rank(int row) {
+         int before = 0;
+         for (int node = root; node != NIL; ) {
+             int comparison = order.applyAsInt(row, rows[node]);
+             if (comparison < 0) {
+                 node = left[node];
+             } else if (comparison > 0) {
+                 before += sizeOf(left[node]) + 1;
+                 node = right[node];
+             } else {
+                 return before + sizeOf(left[node]);
+             }
+         }
+         throw new NoSuchElementException("Row " + row + " is not in the tree");
+     }
+
+     /**
+      * @param rank A position, from 0 to size() - 1.
+      * @return The row at that position.
+      */
+     public int rowAt(int rank) {
+         if (rank < 0 || rank >= size()) throw new IndexOutOfBoundsException("Rank " + rank + " of " + size());
+         int node = root;
+         while (true) {
+             int leftSize = sizeOf(left[node]);
+             if (rank < leftSize) {
+                 node = left[node];
+             } else if (rank > leftSize) {
+                 rank -= leftSize + 1;
+                 node = right[node];
+             } else {
+                 return rows[node];
+             }
+         }
+     }
+
+     /**
+      * @param isBefore A test that holds for the rows before some point in the tree's order and fails from there on.
+      * @return The number of rows that pass the test.
+      */
+     public int countBefore(IntPredicate isBefore) {
+         int count = 0;
+         for (int node = root; node != NIL; ) {
+             if (isBefore.test(rows[node])) {
+                 count += sizeOf(left[node]) + 1;
+                 node = right[node];
+             } else {
+                 node = left[node];
+             }
+         }
+         return count;
+     }
+
+     /**
+      * @param rank The position of the first row to return; size() or more for an exhausted cursor.
+      * @return A cursor over the rows from that position on.
+      */
+     public Cursor cursorAt(int rank) {
+         Cursor cursor = new Cursor();
+         for (int node = root; node != NIL; ) {
+             int leftSize = sizeOf(left[node]);
+             if (rank <= leftSize) {
+                 cursor.push(node);
+                 node = left[node];
+             } else {
+                 rank -= leftSize + 1;
+                 node = right[node];
+             }
+         }
+         return cursor;
+     }
+
+     /**
+      * @param notBefore A test that fails for the rows before some point in the tree's order and holds from there on.
+      * @return A cursor over the rows from the first one that passes the test.
+      */
+     public Cursor cursorFrom(IntPredicate notBefore) {
+         Cursor cursor = new Cursor();
+         for (int node = root; node != NIL; ) {
+             if (notBefore.test(rows[node])) {
+                 cursor.push(node);
+                 node = left[node];
+             } else {
+                 node = right[node];
+             }
+         }
+         return cursor;
+     }
+
+     /**
+      * Visits every row in order.
+      */
+     public void forEach(IntConsumer visitor) {
+         for (Cursor cursor = cursorAt(0); cursor.hasNext(); ) visitor.accept(cursor.next());
+     }
+
+     /**
+      * An in-order walk over the tree, holding the nodes still to visit on a stack.
+      * The tree must not change while a cursor is in use.
+      */
+     class Cursor {
+         private int[] stack = new int[Math.max(1, heightOf(root))];
+         private int depth;
+
+         private void push(int node) {
+             if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+             stack[depth++] = node;
+         }
+
+         public boolean hasNext() {
+             return depth > 0;
+         }
+
+         /**
+          * @return The next row, without moving past it.
+          */
+         public int peek() {
+             if (depth == 0) throw new NoSuchElementException();
+             return rows[stack[depth - 1]];
+         }
+
+         public int next() {
+             if (depth == 0) throw new NoSuchElementException();
+             int node = stack[--depth];
+             for (int child = right[node]; child != NIL; child = left[child]) push(child);
+             return rows[node];
+         }
+     }
+
+     private int insert(int node, int row) {
+         if (node == NIL) return newNode(row);
+         // The child is stored only after the call returns: the call may grow (replace) the node arrays.
+         if (order.applyAsInt(row, rows[node]) < 0) {
+             int child = insert(left[node], row);
+             left[node] = child;
+         } else {
+             int child = insert(right[node], row);
+             right[node] = child;
+         }
+         return rebalance(node);
+     }
+
+     private int remove(int node, int row) {
+         if (node == NIL) return NIL;
+         int comparison = order.applyAsInt(row, rows[node]);
+         if (comparison < 0) {
+             left[node] = remove(left[node], row);
+         } else if (comparison > 0) {
+             right[node] = remove(right[node], row);
+         } else if (left[node] == NIL || right[node] == NIL) {
+             int child = left[node] != NIL ? left[node] : right[node];
+             freeNode(node);
+             removed = true;
+             return child;
+         } else {
+             // Two children: take over the row of the in-order successor and remove that node instead.
+             int successor = right[node];
+             while (left[successor] != NIL) successor = left[successor];
+             rows[node] = rows[successor];
+             right[node] = remove(right[node], rows[successor]);
+         }
+         return rebalance(node);
+     }
+
+     /**
+      * Builds a balanced subtree from sortedRows[from, to) and returns its root.
+      */
+     private int build(int[] sortedRows, int from, int to) {
+         if (from >= to) return NIL;
+         int mid = (from + to) >>> 1;
+         int node = newNode(sortedRows[mid]);
+         int leftChild = build(sortedRows, from, mid);
+         int rightChild = build(sortedRows, mid + 1, to);
+         left[node] = leftChild;
+         right[node] = rightChild;
+         update(node);
+         return node;
+     }
+
+     /**
+      * Restores the AVL balance of a node whose subtrees differ in height by at most two, returning the subtree's new root.
+      */
+     private int rebalance(int node) {
+         update(node);
+         int balance = heightOf(left[node]) - heightOf(right[node]);
+         if (balance > 1) {
+             if (heightOf(left[left[node]]) < heightOf(right[left[node]])) left[node] = rotateLeft(left[node]);
+             return rotateRight(node);
+         }
+         if (balance < -1) {
+             if (heightOf(right[right[node]]) < heightOf(left[right[node]])) right[node] = rotateRight(right[node]);
+             return rotateLeft(node);
+         }
+         return node;
+     }
+
+     private int rotateRight(int node) {
+         int pivot = left[node];
+         left[node] = right[pivot];
+         right[pivot] = node;
+         update(node);
+         update(pivot);
+         return pivot;
+     }
+
+     private int rotateLeft(int node) {
+         int pivot = right[node];
+         right[node] = left[pivot];
+         left[pivot] = node;
+         update(node);
+         update(pivot);
+         return pivot;
+     }
+
+     private int heightOf(int node) {
+         return node == NIL ? 0 : heights[node];
+     }
+
+     private int sizeOf(int node) {
+         return node == NIL ? 0 : sizes[node];
+     }
+
+     /**
+      * Recomputes a node's height and subtree size from its children.
+      */
+     private void update(int node) {
+         heights[node] = (byte) (1 + Math.max(heightOf(left[node]), heightOf(right[node])));
+         sizes[node] = 1 + sizeOf(left[node]) + sizeOf(right[node]);
+     }
+
+     private int newNode(int row) {
+         int node;
+         if (freeNode != NIL) {
+             node = freeNode;
+             freeNode = left[node];
+         } else {
+             ensureNodeCapacity(nodeLimit + 1);
+             node = nodeLimit++;
+         }
+         rows[node] = row;
+         left[node] = NIL;
+         right[node] = NIL;
+         sizes[node] = 1;
+         heights[node] = 1;
+         return node;
+     }
+
+     private void freeNode(int node) {
+         left[node] = freeNode;
+         freeNode = node;
+     }
+
+     private void ensureNodeCapacity(int nodes) {
+         if (nodes <= rows.length) return;
+         int capacity = Math.max(nodes, rows.length * 2);
+         rows = Arrays.copyOf(rows, capacity);
+         left = Arrays.copyOf(left, capacity);
+         right = Arrays.copyOf(right, capacity);
+         sizes = Arrays.copyOf(sizes, capacity);
+         heights = Arrays.copyOf(heights, capacity);
+     }
+ }
+
+ /**
+  * The rows of a ScoreTable ordered by player name and then game name, one node per entry.
+  * Player names are ordered case-insensitively first (then exactly, to keep distinct names apart), so all of a
+  * player's entries, or all entries of the players whose names start with a prefix, are one contiguous run of
+  * nodes: findAllByPlayer() and scanPrefix() take O(log n + k) for k results.
+  */
+ static class PlayerIndex extends RowTree {
+     private final ScoreColumns columns; // The table's columns, read to compare rows.
+
+     PlayerIndex(ScoreColumns columns) {
+         super((a, b) -> compareRows(columns, a, b));
+         this.columns = columns;
+     }
+
+     /**
+      * Replaces the contents with a set of rows in any order.
+      * @param liveRows The rows; the array is sorted in place.
+      */
+     public void rebuild(int[] liveRows) {
+         ScoreTable.sortRows(liveRows, (a, b) -> compareRows(columns, a, b));
+         rebuild(liveRows, liveRows.length);
+     }
+
+     /**
+      * Visits the rows of every entry of a player, ordered by game name.
+      * @param playerName The player's name, matched case-insensitively.
+      * @param visitor Receives each row.
+      */
+     public void findAllByPlayer(String playerName, IntConsumer visitor) {
+         scan(playerName, name -> name.equalsIgnoreCase(playerName), visitor);
+     }
+
+     /**
+      * Visits the rows of every entry whose player name starts with a prefix, ordered by player and game name.
+      * @param prefix The prefix, matched case-insensitively; "" visits every row.
+      * @param visitor Receives each row.
+      */
+     public void scanPrefix(String prefix, IntConsumer visitor) {
+         scan(prefix, name -> name.regionMatches(true, 0, prefix, 0, prefix.length()), visitor);
+     }
+
+     /**
+      * Visits the rows from the first whose player name is not below a bound (case-insensitively) up to the
+      * first whose player name fails a test.
+      */
+     private void scan(String from, Predicate<String> inRange, IntConsumer visitor) {
+         Cursor cursor = cursorFrom(row -> String.CASE_INSENSITIVE_ORDER.compare(playerName(row), from) >= 0);
+         while (cursor.hasNext()) {
+             int row = cursor.next();
+             if (!inRange.test(playerName(row))) return;
+             visitor.accept(row);
+         }
+     }
+
+     private String playerName(int row) {
+         return ScoreEntry.PLAYER_NAMES.nameOf(columns.playerId(row));
+     }
+
+     /**
+      * Orders two rows by player name (case-insensitively, then exactly) and then by game name.
+      */
+     private static int compareRows(ScoreColumns columns, int a, int b) {
+         int playerA = columns.playerId(a);
+         int playerB = columns.playerId(b);
+         if (playerA != playerB) {
+             String nameA = ScoreEntry.PLAYER_NAMES.nameOf(playerA);
+             String nameB = ScoreEntry.PLAYER_NAMES.nameOf(playerB);
+             int order = String.CASE_INSENSITIVE_ORDER.compare(nameA, nameB);
+             return order != 0 ? order : nameA.compareTo(nameB);
+         }
+         int gameA = columns.gameId(a);
+         int gameB = columns.gameId(b);
+         if (gameA == gameB) return 0;
+         return ScoreEntry.GAME_NAMES.nameOf(gameA).compareTo(ScoreEntry.GAME_NAMES.nameOf(gameB));
+     }
+ }
+
+ /**
+  * Outcomes of a run of upserts (see upsert), counted on the event dispatch thread.
+  */
+ static class UpsertCounts {
+     long added;                   // New player/game entries.
+     long updated;                 // Existing entries whose score changed.
+     long unchanged;               // Existing entries with the same score (ignored).
+     long lastCommitTicket;        // Ticket of the last record logged; committing it commits all earlier ones.
+ }
+
+ /**
+  * Running totals of a bulk import (see importScores). Written by the event dispatch thread while blocks are
+  * applied and read there when the import finishes; the reader thread only sets lines and malformed.
+  */
+ static class ImportSummary extends UpsertCounts {
+     volatile long lines;          // Lines read from the file.
+     volatile int malformed;       // Lines skipped as malformed.
+ }
+
+ /**
+  * An append-only mutation log for score data.
+  * Every put (new or changed entry), delete and game deletion is written as one small binary record,
+  * so persisting a mutation costs a single append instead of a rewrite of the whole scores file.
+  * The log is written only by the WriteBehindPersister's thread.
+  * On startup the log is replayed on top of the snapshot to rebuild the latest state.
+  *
+  * Record layout: type (1 byte), player name (UTF, empty for game deletions), game name (UTF),
+  * and for puts the score (int) followed by the date as an epoch day (long).
+  * Names are length-prefixed, so commas in player or game names are stored safely.
+  */
+ static class ScoreLog {
+     static final byte OP_PUT = 1;    // Record type for an added or updated entry.
+     static final byte OP_DELETE = 2; // Record type for a removed entry.
+     static final byte OP_DROP_GAME = 3; // Record type for a removed game (every entry of that game).
+
+     private final File file;      // The log file on disk.
+     private DataOutputStream out; // Stream used to append records (null until opened).
+     private FileChannel channel;  // Channel of the open file, used to force records to the disk.
+     private long recordCount;     // Number of records in the log (replayed plus appended).
+     private long openedLength;    // Length of the file when it was opened for appending.
+
+     /**
+      * Constructor for ScoreLog.
+      * @param file The log file; it does not need to exist yet.
+      */
+     public ScoreLog(File file) {
+         this.file = file;
+     }
+
+     /**
+      * Replays every complete record in the log, in the order it was written.
+      * An incomplete record at the end of the file (e.g. the process died mid-write) is ignored
+      * and cut off, so that later appends start on a clean record boundary.
+      * @param onPut Called with a new ScoreEntry for every put record.
+      * @param onDelete Called with the player name and game name of every delete record.
+      * @param onDropGame Called with the game name of every game deletion record.
+      * @throws IOException If the log cannot be read or truncated.
+      */
+     public void replay(Consumer<ScoreEntry> onPut, BiConsumer<String, String> onDelete, Consumer<String> onDropGame) throws IOException {
+         recordCount = 0;
+         if (!file.exists()) return; // Nothing has been logged yet.
+
+         long validLength = 0; // Byte offset just past the last complete record.
+         try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+              DataInputStream in = new DataInputStream(counter)) {
+             while (true) {
+                 int op = in.read();
+                 if (op == -1) break; // Clean end of the log.
+                 // Read the whole record before applying it, so a torn record is never half-applied.
+                 String name;
+                 String gameName;
+                 int score = 0;
+                 long epochDay = 0;
+                 try {
+                     name = in.readUTF();
+                     gameName = in.readUTF();
+                     if (op == OP_PUT) {
+                         score = in.readInt();
+                         epochDay = in.readLong();
+                     } else if (op != OP_DELETE && op != OP_DROP_GAME) {
+                         break; // Unknown record type: treat the rest of the file as a damaged tail.
+                     }
+                 } catch (EOFException | UTFDataFormatException ex) {
+                     break; // Incomplete record at the end of the file.
+                 }
+                 if (op == OP_PUT) {
+                     onPut.accept(new ScoreEntry(name, Math.max(0, score), (int) epochDay, gameName)); // Written from an int.
+                 } else if (op == OP_DELETE) {
+                     onDelete.accept(name, gameName);
+                 } else {
+                     onDropGame.accept(gameName);
+                 }
+                 validLength = counter.getCount();
+                 recordCount++;
+             }
+         }
+
+         // Drop any damaged tail so new records are not appended after garbage.
+         if (validLength < file.length()) {
+             System.err.println("Truncating damaged score log tail at byte " + validLength + " of " + file.length());
+             try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                 raf.setLength(validLength);
+             }
+         }
+     }
+
+     /**
+      * Opens the log for appending. Existing records are kept.
+      * @throws IOException If the file cannot be opened.
+      */
+     public void open() throws IOException {
+         openedLength = file.length();
+         FileOutputStream fileOut = new FileOutputStream(file, true);
+         channel = fileOut.getChannel();
+         out = new DataOutputStream(new BufferedOutputStream(fileOut));
+     }
+
+     /**
+      * Closes the log, renames it to the given sealed segment file and starts a new, empty log.
+      * If the rename fails, the log is reopened where it was, so later records are still appended to it.
+      * @param sealedFile The file name the current records are moved to.
+      * @throws IOException If the log cannot be closed, renamed or reopened.
+      */
+     public void sealTo(File sealedFile) throws IOException {
+         close();
+         try {
+             Files.move(file.toPath(), sealedFile.toPath()); // Fails rather than overwrite an unfinished segment.
+         } catch (IOException e) {
+             try {
+                 open();
+             } catch (IOException reopen) {
+                 e.addSuppressed(reopen);
+             }
+             throw e;
+         }
+         recordCount = 0;
+         open();
+     }
+
+     /**
+      * Writes a record to the log's buffer. Call flush() to hand buffered records to the OS.
+      * Reopens the log first if an earlier sealTo() could not.
+      * @param record The put, delete or game deletion record.
+      * @throws IOException If the record cannot be written.
+      */
+     public void write(LogRecord record) throws IOException {
+         if (out == null) open();
+         out.writeByte(record.op);
+         out.writeUTF(record.name);
+         out.writeUTF(record.gameName);
+         if (record.op == OP_PUT) {
+             out.writeInt(record.score);
+             out.writeLong(record.epochDay);
+         }
+         recordCount++;
+     }
+
+     /**
+      * Hands all buffered records to the OS in one write.
+      * @throws IOException If flushing fails.
+      */
+     public void flush() throws IOException {
+         out.flush();
+     }
+
+     /**
+      * Hands all buffered records to the OS and forces them onto the storage device (fsync),
+      * so they survive a power failure and not just a crash of the application.
+      * @throws IOException If flushing or forcing fails.
+      */
+     public void sync() throws IOException {
+         out.flush();
+         channel.force(false);
+     }
+
+     /**
+      * Returns the number of records in the log.
+      * @return The replayed plus appended record count.
+      */
+     public long getRecordCount() {
+         return recordCount;
+     }
+
+     /**
+      * Returns the current size of the log in bytes.
+      * @return The file length at open time plus every byte appended since.
+      */
+     public long getByteSize() {
+         return out == null ? file.length() : openedLength + out.size();
+     }
+
+     /**
+      * Closes the append stream, if open.
+      * @throws IOException If closing fails.
+      */
+     public void close() throws IOException {
+         if (out != null) {
+             out.close();
+             out = null;
+             channel = null;
+         }
+     }
+ }
+
+ /**
+  * Reads and writes snapshot files. The text format is one UTF-8 line per entry, comma-separated as
+  * name,score,date,gameName; reading also accepts the binary format (see BinaryScoreFile).
+  */
+ static class ScoreSnapshot {
+
+     /**
+      * Reads every well-formed entry of a snapshot file into a map keyed by getCompositeKey().
+      * When the file holds the same player/game pair more than once, the later entry wins.
+      * Malformed lines are skipped and reported once, as a summary. A missing file is treated as an empty snapshot.
+      * @param file The snapshot file.
+      * @param target The map that receives the entries.
+      * @throws IOException If the file exists but cannot be read.
+      */
+     public static void read(File file, Map<Long, ScoreEntry> target) throws IOException {
+         // Check if the scores file exists.
+         if (!file.exists()) return;
+         // Compressed and binary snapshots start with a magic number; anything else is the legacy text format.
+         int magic = readMagic(file);
+         if (magic == CompressedSnapshot.MAGIC) {
+             CompressedSnapshot.read(file, target);
+             return;
+         }
+         if (magic == BinaryScoreFile.MAGIC) {
+             BinaryScoreFile.read(file, entry -> target.put(entry.getKey(), entry));
+             return;
+         }
+         // Text snapshots are parsed in parallel, straight from a memory-mapped view of the file.
+         new MappedTextScoreLoader().load(file, target);
+     }
+
+     /**
+      * Writes a complete text snapshot and swaps it into place atomically.
+      * The entries are written, sorted, to a temporary file next to the target, which is then
+      * moved over the target, so readers never see a half-written snapshot.
+      * @param file The snapshot file to replace.
+      * @param entries The entries to write.
+      * @throws IOException If writing or moving fails.
+      */
+     public static void writeText(File file, Collection<ScoreEntry> entries) throws IOException {
+         File tempFile = new File(file.getPath() + ".tmp");
+         try (OutputStream out = new FileOutputStream(tempFile)) {
+             writeText(out, entries);
+         }
+         replaceAtomically(tempFile, file);
+     }
+
+     /**
+      * Writes entries in the text format to a stream, sorted, one line at a time. The stream is flushed but not closed.
+      * @param out The stream to write to.
+      * @param entries The entries to write.
+      * @throws IOException If writing fails.
+      */
+     public static void writeText(OutputStream out, Collection<ScoreEntry> entries) throws IOException {
+         // Sort a copy of the entries to ensure consistent file output.
+         ArrayList<ScoreEntry> consistentScores = new ArrayList<>(entries);
+         Collections.sort(consistentScores);
+
+         PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16));
+         for (ScoreEntry entry : consistentScores) {
+             writer.println(entry.getName() + "," + entry.getScore() + "," + entry.getDate() + "," + entry.getGameName());
+         }
+         writer.flush();
+         if (writer.checkError()) throw new IOException("Could not write score text");
+     }
+
+     /**
+      * Reads the first four bytes of a file, where the binary and compressed formats keep their magic number.
+      * @param file The file to check.
+      * @return The first four bytes as a big-endian int, or 0 if the file is shorter.
+      * @throws IOException If the file cannot be read.
+      */
+     static int readMagic(File file) throws IOException {
+         if (file.length() < 4) return 0;
+         try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+             return in.readInt();
+         }
+     }
+
+     /**
+      * Moves a fully written temporary file over its target, atomically where the file system allows it.
+      * @param tempFile The completed temporary file.
+      * @param file The file to replace.
+      * @throws IOException If the move fails.
+      */
+     static void replaceAtomically(File tempFile, File file) throws IOException {
+         try {
+             Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         } catch (AtomicMoveNotSupportedException e) {
+             Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+     }
+ }
+
+ /**
+  * Loads a text score file ("name,score,date,gameName" per line) from a memory-mapped view of the file.
+  * Fields are parsed directly from the mapped bytes: the score and date are decoded digit by digit,
+  * and names go through a dictionary, so a name seen before costs no String allocation. Each parsed line still
+  * allocates one ScoreEntry (four ints, no strings), which its chunk's partial map holds until the merge.
+  * Dates are decoded straight to epoch-day ints; a LocalDate is only created for dates not in yyyy-MM-dd form.
+  *
+  * The mapped file is split at line boundaries into chunks that are parsed on ForkJoin workers,
+  * each into its own partial map. The partial maps are then merged in file order, so for a player/game
+  * pair that appears more than once the last line still wins, exactly as with a sequential read.
+  *
+  * Lines are interpreted exactly like the original reader did: the first three commas separate the
+  * fields (the game name may contain commas), fields are trimmed, negative scores become 0,
+  * and a line that does not parse is skipped. Skipped lines are counted and reported in one summary.
+  *
+  * The mapped regions are not kept once load() returns, but Java only releases a mapping when the garbage
+  * collector frees its buffer. Until then Windows refuses to replace, rename or delete the file, so the callers
+  * that later do so (snapshot rewrites, compaction) report such a failure and try again later.
+  */
+ static class MappedTextScoreLoader {
+     // Largest region mapped at once; larger files are mapped in several line-aligned regions.
+     private static final long MAX_REGION_BYTES = 1L << 30;
+     // Regions smaller than this are not split further; the fork/merge overhead would outweigh the gain.
+     private static final int MIN_CHUNK_BYTES = 1 << 20;
+     private static final int STREAM_BUFFER_BYTES = 1 << 20; // Bytes parsed at a time by loadStream().
+     private static final long INVALID = Long.MIN_VALUE; // Returned by the number/date parsers on bad input.
+
+     private final int parallelism; // Number of workers the file is spread across.
+     private final MalformedLines malformed = new MalformedLines(); // Skipped lines from all chunks.
+
+     /**
+      * Creates a loader that uses every core of the common ForkJoin pool
+      * (or the "leaderboard.loadParallelism" setting, if given).
+      */
+     public MappedTextScoreLoader() {
+         this(Integer.getInteger("leaderboard.loadParallelism", ForkJoinPool.getCommonPoolParallelism()));
+     }
+
+     /**
+      * @param parallelism Number of workers to spread parsing across (1 parses on the calling thread).
+      */
+     public MappedTextScoreLoader(int parallelism) {
+         this.parallelism = Math.max(1, parallelism);
+     }
+
+     /**
+      * Maps the file, parses every line and merges the results into the target map.
+      * @param file The text score file.
+      * @param target The map that receives the entries, keyed by getCompositeKey().
+      * @throws IOException If the file cannot be mapped.
+      */
+     public void load(File file, Map<Long, ScoreEntry> target) throws IOException {
+         try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+             long size = channel.size();
+             long position = 0;
+             while (position < size) {
+                 long length = Math.min(MAX_REGION_BYTES, size - position);
+                 MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                 int end = (int) length;
+                 if (position + length < size) {
+                     // Stop this region after its last complete line; the next region starts on the following line.
+                     end = lastIndexOf(region, (byte) '\n', end) + 1;
+                     if (end == 0) throw new IOException("Line longer than " + MAX_REGION_BYTES + " bytes in " + file);
+                 }
+                 loadRegion(region, end, target);
+                 position += end;
+             }
+         }
+         malformed.report(file);
+     }
+
+     /**
+      * Parses text score lines from a stream (e.g. a decompressing one, which cannot be mapped).
+      * The stream is read in fixed-size blocks that are parsed on the calling thread as they arrive,
+      * so only one block (plus the resulting entries) is ever held in memory.
+      * @param in The stream of text lines.
+      * @param source The file the stream comes from, for the malformed-line summary.
+      * @param target The map that receives the entries, keyed by getCompositeKey().
+      * @throws IOException If the stream cannot be read.
+      */
+     public void loadStream(InputStream in, File source, Map<Long, ScoreEntry> target) throws IOException {
+         streamBlocks(in, source, target::putAll); // Blocks arrive in file order, so later lines still win.
+     }
+
+     /**
+      * Parses text score lines from a stream block by block and hands each block's entries to a callback,
+      * so memory stays bounded by the block size however long the stream is.
+      * The map passed to the callback is reused for the next block; the callback must copy what it keeps.
+      * @param in The stream of text lines.
+      * @param source The file the stream comes from, for the malformed-line summary.
+      * @param onBlock Called with the entries of each block, keyed by getCompositeKey() (within a block, later lines win).
+      * @return The number of lines read, malformed ones included.
+      * @throws IOException If the stream cannot be read.
+      */
+     public long streamBlocks(InputStream in, File source, Consumer<Map<Long, ScoreEntry>> onBlock) throws IOException {
+         ChunkParser parser = new ChunkParser(); // One parser for the whole stream, so names are interned once.
+         byte[] block = new byte[STREAM_BUFFER_BYTES];
+         int filled = 0; // Bytes in the block; the part after the last parsed line is carried over.
+         while (true) {
+             int read = in.readNBytes(block, filled, block.length - filled);
+             filled += read;
+             boolean endOfStream = filled < block.length;
+             ByteBuffer buffer = ByteBuffer.wrap(block);
+             // Parse complete lines only; at the end of the stream, the last line needs no newline.
+             int end = endOfStream ? filled : lastIndexOf(buffer, (byte) '\n', filled) + 1;
+             if (end == 0) {
+                 block = Arrays.copyOf(block, block.length * 2); // One line fills the whole block.
+                 continue;
+             }
+             parser.parseLines(buffer, 0, end);
+             onBlock.accept(parser.partial);
+             parser.partial.clear();
+             if (endOfStream) break;
+             System.arraycopy(block, end, block, 0, filled - end);
+             filled -= end;
+         }
+         malformed.addAll(parser.malformed);
+         malformed.report(source);
+         return parser.lines;
+     }
+
+     /**
+      * @return The number of malformed lines skipped so far.
+      */
+     public int getMalformedLines() {
+         return malformed.total();
+     }
+
+     /**
+      * Splits [0, end) of a mapped region into line-aligned chunks, parses them in parallel and merges
+      * the partial maps into the target in chunk order.
+      */
+     private void loadRegion(ByteBuffer region, int end, Map<Long, ScoreEntry> target) {
+         int chunkCount = (int) Math.max(1, Math.min((long) parallelism * 4, end / MIN_CHUNK_BYTES));
+         if (parallelism == 1) chunkCount = 1;
+         ArrayList<ChunkTask> tasks = new ArrayList<>(chunkCount);
+         int chunkStart = 0;
+         for (int i = 1; i <= chunkCount && chunkStart < end; i++) {
+             int chunkEnd = end;
+             if (i < chunkCount) {
+                 // Move the split point forward to just past the next newline.
+                 int newline = indexOf(region, (byte) '\n', Math.max(chunkStart, (int) ((long) end * i / chunkCount)), end);
+                 chunkEnd = newline < 0 ? end : newline + 1;
+             }
+             tasks.add(new ChunkTask(region.duplicate(), chunkStart, chunkEnd));
+             chunkStart = chunkEnd;
+         }
+
+         if (tasks.size() == 1) {
+             tasks.get(0).invoke(); // Nothing to parallelize; parse on this thread.
+         } else {
+             for (ChunkTask task : tasks) task.fork();
+         }
+
+         // Merge in file order so that a later line for the same player/game replaces an earlier one.
+         for (ChunkTask task : tasks) {
+             ChunkParser parser = task.join();
+             target.putAll(parser.partial); // Names are already ids shared by every chunk.
+             malformed.addAll(parser.malformed);
+         }
+     }
+
+     /**
+      * A ForkJoin task that parses one chunk of lines into a partial map.
+      */
+     static class ChunkTask extends RecursiveTask<ChunkParser> {
+         private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; tasks are never serialized.
+
+         private final ByteBuffer buffer; // A private view of the mapped region.
+         private final int start;        // First byte of the chunk (start of a line).
+         private final int end;          // Byte just past the chunk (end of a line or of the region).
+
+         ChunkTask(ByteBuffer buffer, int start, int end) {
+             this.buffer = buffer;
+             this.start = start;
+             this.end = end;
+         }
+
+         @Override
+         protected ChunkParser compute() {
+             ChunkParser parser = new ChunkParser();
+             parser.parseLines(buffer, start, end);
+             return parser;
+         }
+     }
+
+     /**
+      * Parses lines into a partial map. Each chunk gets its own parser, so no state is shared between workers.
+      * Every well-formed line becomes one ScoreEntry in the map; a later line for the same pair replaces it.
+      */
+     static class ChunkParser {
+         final LongScoreMap partial = new LongScoreMap();             // Entries of this chunk, last line wins.
+         final MalformedLines malformed = new MalformedLines();      // Lines of this chunk that were skipped.
+         private final NameDictionary players = new NameDictionary(ScoreEntry.PLAYER_NAMES); // Player name ids.
+         private final NameDictionary games = new NameDictionary(ScoreEntry.GAME_NAMES);     // Game name ids.
+         long lines;                                                  // Lines parsed so far, malformed ones included.
+
+         /**
+          * Parses every line in [start, end) of a buffer. The range must begin at the start of a line.
+          * @param buffer The buffer holding file bytes.
+          * @param start Offset of the first byte to parse.
+          * @param end Offset just past the last byte to parse.
+          */
+         void parseLines(ByteBuffer buffer, int start, int end) {
+             int lineStart = start;
+             while (lineStart < end) {
+                 int lineEnd = indexOf(buffer, (byte) '\n', lineStart, end);
+                 if (lineEnd < 0) lineEnd = end; // Last line without a trailing newline.
+                 int contentEnd = lineEnd;
+                 if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') contentEnd--; // Windows line ending.
+                 parseLine(buffer, lineStart, contentEnd);
+                 lines++;
+                 lineStart = lineEnd + 1;
+             }
+         }
+
+         /**
+          * Parses one line (without its line terminator).
+          */
+         private void parseLine(ByteBuffer buffer, int start, int end) {
+             // Locate the first three commas; everything after the third one is the game name.
+             int comma1 = indexOf(buffer, (byte) ',', start, end);
+             int comma2 = comma1 < 0 ? -1 : indexOf(buffer, (byte) ',', comma1 + 1, end);
+             int comma3 = comma2 < 0 ? -1 : indexOf(buffer, (byte) ',', comma2 + 1, end);
+             if (comma3 < 0) {
+                 // If a line doesn't have 4 parts, it's considered malformed.
+                 malformed.add(MalformedLines.WRONG_FIELD_COUNT, buffer, start, end);
+                 return;
+             }
+             long score = parseInt(buffer, comma1 + 1, comma2);
+             if (score == INVALID) {
+                 malformed.add(MalformedLines.INVALID_SCORE, buffer, start, end);
+                 return;
+             }
+             long epochDay = parseDate(buffer, comma2 + 1, comma3);
+             if (epochDay == INVALID) {
+                 malformed.add(MalformedLines.INVALID_DATE, buffer, start, end);
+                 return;
+             }
+             int nameId = players.intern(buffer, trimStart(buffer, start, comma1), trimEnd(buffer, start, comma1));
+             int gameId = games.intern(buffer, trimStart(buffer, comma3 + 1, end), trimEnd(buffer, comma3 + 1, end));
+             // Negative scores become 0.
+             partial.put(ScoreEntry.key(nameId, gameId), new ScoreEntry(nameId, (int) Math.max(0, score), (int) epochDay, gameId));
+         }
+
+         /**
+          * Parses a trimmed ISO date (yyyy-MM-dd). Unusual but valid ISO forms (e.g. "+10000-01-01")
+          * fall back to LocalDate.parse so the accepted input is the same as before.
+          * @return The date in days since 1970-01-01, or INVALID if the field is not a valid date
+          *         (or one too far from 1970 to fit in an int).
+          */
+         private long parseDate(ByteBuffer buffer, int start, int end) {
+             int from = trimStart(buffer, start, end);
+             int to = trimEnd(buffer, start, end);
+             if (to - from == 10 && buffer.get(from + 4) == '-' && buffer.get(from + 7) == '-') {
+                 int year = digits(buffer, from, 4);
+                 int month = digits(buffer, from + 5, 2);
+                 int day = digits(buffer, from + 8, 2);
+                 if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= daysInMonth(year, month)) {
+                     return epochDay(year, month, day); // Four-digit years always fit in an int.
+                 }
+             }
+             try {
+                 long epochDay = LocalDate.parse(decode(buffer, from, to)).toEpochDay();
+                 return epochDay == (int) epochDay ? epochDay : INVALID;
+             } catch (Exception ex) {
+                 return INVALID;
+             }
+         }
+     }
+
+     /**
+      * Counts skipped lines by reason and keeps the first few as examples,
+      * so a damaged file produces one summary instead of one message per line.
+      */
+     static class MalformedLines {
+         static final int WRONG_FIELD_COUNT = 0; // The line does not have four comma-separated parts.
+         static final int INVALID_SCORE = 1;     // The score is not a whole number that fits in an int.
+         static final int INVALID_DATE = 2;      // The date is not a valid ISO date.
+         private static final String[] REASONS = {"incorrect number of parts", "invalid score", "invalid date"};
+         private static final int MAX_SAMPLES = 5; // Example lines kept for the summary.
+
+         private final int[] counts = new int[REASONS.length];
+         private final ArrayList<String> samples = new ArrayList<>();
+
+         void add(int reason, ByteBuffer buffer, int start, int end) {
+             counts[reason]++;
+             if (samples.size() < MAX_SAMPLES) {
+                 samples.add("'" + decode(buffer, start, end) + "' (" + REASONS[reason] + ")");
+             }
+         }
+
+         void addAll(MalformedLines other) {
+             for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+             for (String sample : other.samples) {
+                 if (samples.size() < MAX_SAMPLES) samples.add(sample);
+             }
+         }
+
+         int total() {
+             return Arrays.stream(counts).sum();
+         }
+
+         /**
+          * Prints one summary line (plus the example lines) if anything was skipped.
+          * @param file The file the lines came from.
+          */
+         void report(File file) {
+             if (total() == 0) return;
+             StringBuilder summary = new StringBuilder("Skipped " + total() + " malformed line(s) in " + file + ":");
+             for (int i = 0; i < counts.length; i++) {
+                 if (counts[i] > 0) summary.append(' ').append(counts[i]).append(" with ").append(REASONS[i]).append(';');
+             }
+             summary.append(" first examples: ").append(String.join(", ", samples));
+             System.err.println(summary);
+         }
+     }
+
+     /**
+      * Parses a trimmed, optionally signed decimal int.
+      * @return The value, or INVALID if the field is not a valid int.
+      */
+     private static long parseInt(ByteBuffer buffer, int start, int end) {
+         int from = trimStart(buffer, start, end);
+         int to = trimEnd(buffer, start, end);
+         if (from >= to) return INVALID;
+         boolean negative = false;
+         byte first = buffer.get(from);
+         if (first == '-' || first == '+') {
+             negative = first == '-';
+             if (++from == to) return INVALID; // A sign with no digits.
+         }
+         long value = 0;
+         for (int i = from; i < to; i++) {
+             int digit = buffer.get(i) - '0';
+             if (digit < 0 || digit > 9) return INVALID;
+             value = value * 10 + digit;
+             if (value > (long) Integer.MAX_VALUE + 1) return INVALID; // Too large for an int.
+         }
+         value = negative ? -value : value;
+         return value > Integer.MAX_VALUE ? INVALID : value;
+     }
+
+     /**
+      * Reads a fixed number of ASCII digits.
+      * @return The value, or -1 if any byte is not a digit.
+      */
+     private static int digits(ByteBuffer buffer, int from, int count) {
+         int value = 0;
+         for (int i = from; i < from + count; i++) {
+             int digit = buffer.get(i) - '0';
+             if (digit < 0 || digit > 9) return -1;
+             value = value * 10 + digit;
+         }
+         return value;
+     }
+
+     private static boolean isLeapYear(int year) {
+         return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+     }
+
+     private static int daysInMonth(int year, int month) {
+         switch (month) {
+             case 2: return isLeapYear(year) ? 29 : 28;
+             case 4: case 6: case 9: case 11: return 30;
+             default: return 31;
+         }
+     }
+
+     /**
+      * Converts a valid year/month/day to days since 1970-01-01 (same arithmetic as LocalDate.toEpochDay).
+      */
+     static long epochDay(int year, int month, int day) {
+         long total = 365L * year;
+         total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+         total += (367 * month - 362) / 12;
+         total += day - 1;
+         if (month > 2) total -= isLeapYear(year) ? 1 : 2;
+         return total - 719528; // Days from year 0 to 1970.
+     }
+
+     /**
+      * @return The first offset in [start, end) whose byte is above a space (like String.trim).
+      */
+     static int trimStart(ByteBuffer buffer, int start, int end) {
+         while (start < end && (buffer.get(start) & 0xFF) <= ' ') start++;
+         return start;
+     }
+
+     /**
+      * @return The offset just past the last byte in [start, end) that is above a space.
+      */
+     static int trimEnd(ByteBuffer buffer, int start, int end) {
+         while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') end--;
+         return end;
+     }
+
+     static int indexOf(ByteBuffer buffer, byte value, int start, int end) {
+         for (int i = start; i < end; i++) {
+             if (buffer.get(i) == value) return i;
+         }
+         return -1;
+     }
+
+     static int lastIndexOf(ByteBuffer buffer, byte value, int end) {
+         for (int i = end - 1; i >= 0; i--) {
+             if (buffer.get(i) == value) return i;
+         }
+         return -1;
+     }
+
+     /**
+      * Decodes a byte range as UTF-8. Only used for names seen for the first time and error messages.
+      */
+     static String decode(ByteBuffer buffer, int start, int end) {
+         byte[] bytes = new byte[end - start];
+         buffer.get(start, bytes);
+         return new String(bytes, StandardCharsets.UTF_8);
+     }
+ }
+
+ /**
+  * Assigns dense int ids to names, so that entries and map keys hold an int instead of a String.
+  * Each distinct name is stored once and keeps its id for the rest of the session (ids are never reused);
+  * a name is turned back into a String only to render or persist it. Safe for concurrent use, because the
+  * parallel text loader resolves names on several worker threads.
+  */
+ static class SymbolTable {
+     private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>(); // Name -> id.
+     private volatile String[] names = new String[1024]; // Id -> name; replaced (never shrunk) when full.
+     private int size; // Number of assigned ids; guarded by this.
+
+     /**
+      * Returns the id of a name, assigning the next free id if the name is new.
+      * @param name The name.
+      * @return The name's id.
+      */
+     public int idOf(String name) {
+         Integer id = ids.get(name);
+         if (id != null) return id;
+         synchronized (this) {
+             id = ids.get(name);
+             if (id != null) return id;
+             if (size == names.length) names = Arrays.copyOf(names, size * 2);
+             names[size] = name; // Written before the id is published, so a reader of the id sees the name.
+             ids.put(name, size);
+             return size++;
+         }
+     }
+
+     /**
+      * Returns the id of a name without assigning one.
+      * @param name The name.
+      * @return The name's id, or -1 if the name has never been seen.
+      */
+     public int find(String name) {
+         Integer id = ids.get(name);
+         return id == null ? -1 : id;
+     }
+
+     /**
+      * @param id An id returned by idOf().
+      * @return The name with that id.
+      */
+     public String nameOf(int id) {
+         return names[id];
+     }
+
+     /**
+      * @return The number of distinct names.
+      */
+     public synchronized int size() {
+         return size;
+     }
+ }
+
+ /**
+  * An open-addressing hash table from UTF-8 byte sequences to the ids of a SymbolTable.
+  * Looking up a name compares bytes in place, so a name that is already known returns its id
+  * without decoding or allocating anything; each distinct name is decoded (and resolved in the
+  * shared, synchronized-on-growth symbol table) exactly once per dictionary.
+  */
+ static class NameDictionary {
+     private final SymbolTable symbols; // The table that assigns the ids.
+     private byte[][] keys = new byte[1024][]; // UTF-8 bytes of each stored name (null = empty slot).
+     private int[] values = new int[1024]; // The symbol id of each slot's name.
+     private int[] hashes = new int[1024]; // Cached hash of each slot's key.
+     private int size; // Number of stored names.
+
+     /**
+      * @param symbols The symbol table whose ids this dictionary returns.
+      */
+     public NameDictionary(SymbolTable symbols) {
+         this.symbols = symbols;
+     }
+
+     /**
+      * Returns the symbol id for the UTF-8 bytes in [start, end) of the buffer, assigning one if the name is new.
+      * @param buffer The buffer holding the bytes.
+      * @param start Offset of the first byte.
+      * @param end Offset just past the last byte.
+      * @return The name's id in the symbol table.
+      */
+     public int intern(ByteBuffer buffer, int start, int end) {
+         int hash = 1;
+         for (int i = start; i < end; i++) hash = 31 * hash + buffer.get(i);
+         int mask = keys.length - 1;
+         int slot = mix(hash) & mask;
+         while (keys[slot] != null) {
+             if (hashes[slot] == hash && matches(keys[slot], buffer, start, end)) return values[slot];
+             slot = (slot + 1) & mask;
+         }
+         // First time this name is seen: copy its bytes and decode it once.
+         byte[] key = new byte[end - start];
+         buffer.get(start, key);
+         int value = symbols.idOf(new String(key, StandardCharsets.UTF_8));
+         keys[slot] = key;
+         values[slot] = value;
+         hashes[slot] = hash;
+         if (++size * 2 > keys.length) grow();
+         return value;
+     }
+
+     /**
+      * @return The number of distinct names stored.
+      */
+     public int size() {
+         return size;
+     }
+
+     private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+         if (key.length != end - start) return false;
+         for (int i = 0; i < key.length; i++) {
+             if (key[i] != buffer.get(start + i)) return false;
+         }
+         return true;
+     }
+
+     private static int mix(int hash) {
+         return hash ^ (hash >>> 16);
+     }
+
+     /**
+      * Doubles the table and re-inserts every stored name.
+      */
+     private void grow() {
+         byte[][] oldKeys = keys;
+         int[] oldValues = values;
+         int[] oldHashes = hashes;
+         keys = new byte[oldKeys.length * 2][];
+         values = new int[oldKeys.length * 2];
+         hashes = new int[oldKeys.length * 2];
+         int mask = keys.length - 1;
+         for (int i = 0; i < oldKeys.length; i++) {
+             if (oldKeys[i] == null) continue;
+             int slot = mix(oldHashes[i]) & mask;
+             while (keys[slot] != null) slot = (slot + 1) & mask;
+             keys[slot] = oldKeys[i];
+             values[slot] = oldValues[i];
+             hashes[slot] = oldHashes[i];
+         }
+     }
+ }
+
+ /**
+  * The two formats a snapshot file can be written in.
+  * New shards are always written in the configured format; shards and legacy snapshots in the other
+  * format are still read (the format is detected by content), so switching formats is a matter of
+  * changing the setting: each game's shard is converted the next time it is rewritten.
+  */
+ enum SnapshotFormat {
+     TEXT(SCORES_FILE_NAME, BINARY_SCORES_FILE_NAME, ".txt"),
+     BINARY(BINARY_SCORES_FILE_NAME, SCORES_FILE_NAME, ".dat");
+
+     private final String fileName;      // Legacy single-file snapshot written in this format.
+     private final String otherFileName; // Legacy single-file snapshot written in the other format.
+     private final String extension;     // File extension of shards written in this format.
+
+     SnapshotFormat(String fileName, String otherFileName, String extension) {
+         this.fileName = fileName;
+         this.otherFileName = otherFileName;
+         this.extension = extension;
+     }
+
+     /**
+      * Parses the "leaderboard.snapshotFormat" setting.
+      * @param setting "text" or "binary" (case-insensitive); anything else falls back to text.
+      * @return The matching format.
+      */
+     static SnapshotFormat fromSetting(String setting) {
+         return "binary".equalsIgnoreCase(setting) ? BINARY : TEXT;
+     }
+
+     /**
+      * @param folder The folder holding the legacy files (null for the working directory).
+      * @return The legacy single-file snapshot to start from: this format's file if it exists, otherwise the other format's file.
+      */
+     File legacySnapshotFile(File folder) {
+         File file = new File(folder, fileName);
+         File other = new File(folder, otherFileName);
+         return !file.exists() && other.exists() ? other : file;
+     }
+
+     /**
+      * @return The extension (including the dot) of shard files written in this format.
+      */
+     String getExtension() {
+         return extension;
+     }
+
+     /**
+      * Writes a complete snapshot file in this format, replacing any previous file atomically.
+      * @param file The file to write.
+      * @param entries The entries to write.
+      * @throws IOException If writing fails.
+      */
+     void write(File file, Collection<ScoreEntry> entries) throws IOException {
+         if (this == BINARY) {
+             BinaryScoreFile.write(file, entries);
+         } else {
+             ScoreSnapshot.writeText(file, entries);
+         }
+     }
+
+     /**
+      * Renames both legacy single-file snapshots to "*.bak" once their data lives in shards,
+      * so they are not mistaken for live data.
+      * A file that cannot be renamed (on Windows, one still mapped by the read that migrated it) is reported and
+      * left in place; once a manifest exists the legacy files are never read again, so it is only clutter.
+      * @param folder The folder holding the legacy files (null for the working directory).
+      */
+     static void retireLegacySnapshots(File folder) {
+         for (String legacyName : new String[] {SCORES_FILE_NAME, BINARY_SCORES_FILE_NAME}) {
+             File legacy = new File(folder, legacyName);
+             if (!legacy.exists()) continue;
+             try {
+                 Files.move(legacy.toPath(), new File(folder, legacyName + ".bak").toPath(), StandardCopyOption.REPLACE_EXISTING);
+             } catch (IOException e) {
+                 System.err.println("Could not retire legacy snapshot " + legacy + ": " + e.getMessage());
+             }
+         }
+     }
+ }
+
+ /**
+  * A versioned binary snapshot format with fixed-width records.
+  * Player and game names are stored once each in a string dictionary, and every entry is a
+  * 16-byte record of (nameId, gameId, score, epochDay), so loading is a tight decode loop with no
+  * text splitting or number/date parsing, and names containing commas are stored safely.
+  *
+  * Layout (big-endian):
+  *   header:  magic (int "LBSF"), version (short), record size (short),
+  *            player count (int), game count (int), record count (int)
+  *   strings: player names then game names (modified UTF-8, length-prefixed)
+  *   records: record count x [nameId int, gameId int, score int, epochDay int]
+  */
+ static class BinaryScoreFile {
+     static final int MAGIC = 0x4C425346; // "LBSF" - Leaderboard Score File.
+     static final short VERSION = 1;      // Current format version.
+     static final int RECORD_SIZE = 16;   // Bytes per record: four ints.
+
+     private static final int RECORDS_PER_CHUNK = 4096; // Records decoded per bulk read.
+
+     /**
+      * Checks whether a file starts with the binary format's magic number.
+      * @param file The file to check.
+      * @return True if the file is a binary score file.
+      * @throws IOException If the file cannot be read.
+      */
+     public static boolean isBinaryFile(File file) throws IOException {
+         return ScoreSnapshot.readMagic(file) == MAGIC;
+     }
+
+     /**
+      * Finds the records of some players in a binary score file holding a single game (a shard).
+      * Only the name ids of the records are examined; no entries are decoded.
+      * @param file The binary score file.
+      * @param playerNames The players to look for.
+      * @return Player name -> byte offset of that player's (last) record; players without a record are absent.
+      * @throws IOException If the file cannot be read or is not a valid binary score file.
+      */
+     public static HashMap<String, Long> locateRecords(File file, Set<String> playerNames) throws IOException {
+         HashMap<String, Long> offsets = new HashMap<>();
+         try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+              DataInputStream in = new DataInputStream(counter)) {
+             if (in.readInt() != MAGIC) throw new IOException(file + " is not a binary score file");
+             short version = in.readShort();
+             if (version != VERSION) throw new IOException("Unsupported score file version " + version + " in " + file);
+             if (in.readShort() != RECORD_SIZE) throw new IOException("Unexpected record size in " + file);
+             // Name id -> wanted player name (null for players that are not wanted).
+             String[] wanted = new String[in.readInt()];
+             int gameCount = in.readInt();
+             int recordCount = in.readInt();
+             for (int i = 0; i < wanted.length; i++) {
+                 String playerName = in.readUTF();
+                 if (playerNames.contains(playerName)) wanted[i] = playerName;
+             }
+             for (int i = 0; i < gameCount; i++) in.readUTF();
+             long recordsStart = counter.getCount();
+             for (int i = 0; i < recordCount; i++) {
+                 int nameId = in.readInt();
+                 in.skipBytes(RECORD_SIZE - 4);
+                 if (nameId < 0 || nameId >= wanted.length) throw new IOException("Corrupt record in " + file + ": name id out of range");
+                 if (wanted[nameId] != null) offsets.put(wanted[nameId], recordsStart + (long) i * RECORD_SIZE);
+             }
+         }
+         return offsets;
+     }
+
+     /**
+      * Overwrites the score and date of existing records in place, with one positional write per record,
+      * and forces them to disk. Names, ids and the file's length are untouched, so record offsets stay valid.
+      * @param file The binary score file.
+      * @param updates Byte offset of a record -> the entry whose score and date it gets.
+      * @throws IOException If writing or forcing fails.
+      */
+     public static void updateRecords(File file, Map<Long, ScoreEntry> updates) throws IOException {
+         ByteBuffer field = ByteBuffer.allocate(8); // score int, epochDay int.
+         try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+             for (Map.Entry<Long, ScoreEntry> update : updates.entrySet()) {
+                 field.clear();
+                 field.putInt(update.getValue().getScore());
+                 field.putInt(update.getValue().getEpochDay());
+                 field.flip();
+                 long position = update.getKey() + 8; // Skip nameId and gameId.
+                 while (field.hasRemaining()) position += channel.write(field, position);
+             }
+             channel.force(false);
+         }
+     }
+
+     /**
+      * Writes all entries to a binary score file, replacing it atomically.
+      * @param file The file to write.
+      * @param entries The entries to write.
+      * @throws IOException If writing fails.
+      */
+     public static void write(File file, Collection<ScoreEntry> entries) throws IOException {
+         File tempFile = new File(file.getPath() + ".tmp");
+         try (OutputStream out = new FileOutputStream(tempFile)) {
+             write(out, entries);
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, file);
+     }
+
+     /**
+      * Writes all entries in the binary format to a stream. The stream is flushed but not closed.
+      * @param stream The stream to write to.
+      * @param entries The entries to write.
+      * @throws IOException If writing fails.
+      */
+     public static void write(OutputStream stream, Collection<ScoreEntry> entries) throws IOException {
+         // Assign dense ids to player and game names in first-seen order.
+         LinkedHashMap<String, Integer> playerIds = new LinkedHashMap<>();
+         LinkedHashMap<String, Integer> gameIds = new LinkedHashMap<>();
+         for (ScoreEntry entry : entries) {
+             playerIds.putIfAbsent(entry.getName(), playerIds.size());
+             gameIds.putIfAbsent(entry.getGameName(), gameIds.size());
+         }
+
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+         out.writeInt(MAGIC);
+         out.writeShort(VERSION);
+         out.writeShort(RECORD_SIZE);
+         out.writeInt(playerIds.size());
+         out.writeInt(gameIds.size());
+         out.writeInt(entries.size());
+         for (String playerName : playerIds.keySet()) out.writeUTF(playerName);
+         for (String gameName : gameIds.keySet()) out.writeUTF(gameName);
+         for (ScoreEntry entry : entries) {
+             out.writeInt(playerIds.get(entry.getName()));
+             out.writeInt(gameIds.get(entry.getGameName()));
+             out.writeInt(entry.getScore());
+             out.writeInt(entry.getEpochDay());
+         }
+         out.flush();
+     }
+
+     /**
+      * Reads every record of a binary score file.
+      * @param file The file to read.
+      * @param onEntry Called with a new ScoreEntry for every record, in file order.
+      * @throws IOException If the file cannot be read or is not a valid binary score file.
+      */
+     public static void read(File file, Consumer<ScoreEntry> onEntry) throws IOException {
+         try (InputStream in = new FileInputStream(file)) {
+             read(in, file.getPath(), onEntry);
+         }
+     }
+
+     /**
+      * Reads every record of a binary score file from a stream, decoding as it goes.
+      * @param stream The stream, positioned at the magic number.
+      * @param file Name of the source, for error messages.
+      * @param onEntry Called with a new ScoreEntry for every record, in file order.
+      * @throws IOException If the stream cannot be read or does not hold a valid binary score file.
+      */
+     public static void read(InputStream stream, String file, Consumer<ScoreEntry> onEntry) throws IOException {
+         DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+         if (in.readInt() != MAGIC) throw new IOException(file + " is not a binary score file");
+         short version = in.readShort();
+         if (version != VERSION) throw new IOException("Unsupported score file version " + version + " in " + file);
+         if (in.readShort() != RECORD_SIZE) throw new IOException("Unexpected record size in " + file);
+         // The file's dictionaries, resolved once to symbol ids, so records are decoded without any name lookups.
+         int[] playerIds = new int[in.readInt()];
+         int[] gameIds = new int[in.readInt()];
+         int recordCount = in.readInt();
+         for (int i = 0; i < playerIds.length; i++) playerIds[i] = ScoreEntry.PLAYER_NAMES.idOf(in.readUTF());
+         for (int i = 0; i < gameIds.length; i++) gameIds[i] = ScoreEntry.GAME_NAMES.idOf(in.readUTF());
+
+         // Decode records in bulk chunks: one readFully per chunk, then plain int reads from the buffer.
+         byte[] chunk = new byte[RECORDS_PER_CHUNK * RECORD_SIZE];
+         ByteBuffer buffer = ByteBuffer.wrap(chunk);
+         int remaining = recordCount;
+         while (remaining > 0) {
+             int batch = Math.min(remaining, RECORDS_PER_CHUNK);
+             in.readFully(chunk, 0, batch * RECORD_SIZE);
+             buffer.clear();
+             for (int i = 0; i < batch; i++) {
+                 int nameId = buffer.getInt();
+                 int gameId = buffer.getInt();
+                 int score = buffer.getInt();
+                 int epochDay = buffer.getInt();
+                 if (nameId < 0 || nameId >= playerIds.length || gameId < 0 || gameId >= gameIds.length) {
+                     throw new IOException("Corrupt record in " + file + ": name/game id out of range");
+                 }
+                 onEntry.accept(new ScoreEntry(playerIds[nameId], Math.max(0, score), epochDay, gameIds[gameId]));
+             }
+             remaining -= batch;
+         }
+     }
+
+     /**
+      * Converts a legacy text score file into a binary score file.
+      * @param textFile The comma-separated source file.
+      * @param binaryFile The binary file to write.
+      * @throws IOException If reading or writing fails.
+      */
+     public static void convertFromText(File textFile, File binaryFile) throws IOException {
+         if (!textFile.exists()) throw new FileNotFoundException(textFile.getPath());
+         // Later lines win for duplicate player/game pairs, as they do when the application loads the file.
+         LinkedHashMap<Long, ScoreEntry> entries = new LinkedHashMap<>();
+         ScoreSnapshot.read(textFile, entries);
+         write(binaryFile, entries.values());
+     }
+
+     /**
+      * Converts a binary score file back into the legacy text format.
+      * @param binaryFile The binary source file.
+      * @param textFile The comma-separated file to write.
+      * @throws IOException If reading or writing fails.
+      */
+     public static void convertToText(File binaryFile, File textFile) throws IOException {
+         if (!binaryFile.exists()) throw new FileNotFoundException(binaryFile.getPath());
+         LinkedHashMap<Long, ScoreEntry> entries = new LinkedHashMap<>();
+         ScoreSnapshot.read(binaryFile, entries); // Also accepts compressed files.
+         ScoreSnapshot.writeText(textFile, entries.values());
+     }
+ }
+
+ /**
+  * An optional compressed envelope around either snapshot format ("leaderboard.snapshotCompression=deflate").
+  * Score files compress well: player and game names repeat on every line and dates share most of their digits.
+  * The file is a magic number followed by a zlib (Deflater) stream holding a complete text or binary snapshot.
+  * Both directions are streamed: entries are encoded straight into the compressor, and reading
+  * decompresses into the regular parsers block by block, so the uncompressed file never exists in memory or on disk.
+  *
+  * Layout: magic (int "LBSZ"), then the deflated bytes of a text or binary snapshot (detected by content).
+  */
+ static class CompressedSnapshot {
+     static final int MAGIC = 0x4C42535A; // "LBSZ" - Leaderboard Score Zipped.
+     static final String EXTENSION = ".z"; // Appended to the inner format's extension.
+
+     private static final int BUFFER_BYTES = 1 << 16; // Compressor/decompressor buffer size.
+
+     /**
+      * Writes a compressed snapshot, replacing the file atomically.
+      * @param file The file to write.
+      * @param format The format of the snapshot inside the compressed stream.
+      * @param entries The entries to write.
+      * @throws IOException If writing fails.
+      */
+     public static void write(File file, SnapshotFormat format, Collection<ScoreEntry> entries) throws IOException {
+         File tempFile = new File(file.getPath() + ".tmp");
+         Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+         try (OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_BYTES)) {
+             new DataOutputStream(fileOut).writeInt(MAGIC);
+             DeflaterOutputStream deflated = new DeflaterOutputStream(fileOut, deflater, BUFFER_BYTES);
+             if (format == SnapshotFormat.BINARY) {
+                 BinaryScoreFile.write(deflated, entries);
+             } else {
+                 ScoreSnapshot.writeText(deflated, entries);
+             }
+             deflated.finish(); // Writes the end of the zlib stream; closing fileOut then flushes it.
+         } finally {
+             deflater.end(); // Frees the native compressor (not done by the stream for a supplied Deflater).
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, file);
+     }
+
+     /**
+      * Reads every entry of a compressed snapshot into a map keyed by getCompositeKey().
+      * @param file The compressed file.
+      * @param target The map that receives the entries.
+      * @throws IOException If the file cannot be read or is not a compressed snapshot.
+      */
+     public static void read(File file, Map<Long, ScoreEntry> target) throws IOException {
+         Inflater inflater = new Inflater();
+         try (InputStream fileIn = new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES)) {
+             if (new DataInputStream(fileIn).readInt() != MAGIC) throw new IOException(file + " is not a compressed score file");
+             BufferedInputStream inflated = new BufferedInputStream(new InflaterInputStream(fileIn, inflater, BUFFER_BYTES), BUFFER_BYTES);
+             // Peek at the inner snapshot's first bytes to pick the parser.
+             inflated.mark(4);
+             int innerMagic;
+             try {
+                 innerMagic = new DataInputStream(inflated).readInt();
+             } catch (EOFException e) {
+                 return; // Fewer than four bytes inside: an empty snapshot.
+             }
+             inflated.reset();
+             if (innerMagic == BinaryScoreFile.MAGIC) {
+                 BinaryScoreFile.read(inflated, file.getPath(), entry -> target.put(entry.getKey(), entry));
+             } else {
+                 new MappedTextScoreLoader().loadStream(inflated, file, target);
+             }
+         } finally {
+             inflater.end();
+         }
+     }
+
+     /**
+      * Compresses any snapshot file (text, binary or already compressed).
+      * @param source The snapshot to read.
+      * @param target The compressed file to write.
+      * @param format The format used inside the compressed file.
+      * @throws IOException If reading or writing fails.
+      */
+     public static void convert(File source, File target, SnapshotFormat format) throws IOException {
+         if (!source.exists()) throw new FileNotFoundException(source.getPath());
+         LinkedHashMap<Long, ScoreEntry> entries = new LinkedHashMap<>();
+         ScoreSnapshot.read(source, entries);
+         write(target, format, entries.values());
+     }
+ }
+
+ /**
+  * An optional index sidecar ("leaderboard.shardIndex=true") stored next to an uncompressed shard file
+  * ("game-7.42.txt.idx"). It holds the shard's name dictionaries and a hash table from player name to the
+  * byte offset of that player's record in the shard. The sidecar is read into memory and the shard is read one
+  * record at a time, so a game that is not loaded can answer "does this player have a score here, and what is it?"
+  * by decoding one record, instead of parsing the whole shard into memory. Neither file is memory-mapped or
+  * kept open, so compaction can replace and delete them while the index is in use.
+  *
+  * The warm start this gives only applies with lazy loading ("leaderboard.lazyLoading=true"): there, searches and
+  * player deletions ask the sidecars of unloaded games instead of loading them. With lazy loading off, startup
+  * loads every game into memory and still decodes every shard in full; the sidecars are then only used by
+  * compaction, to find the records it overwrites in place.
+  *
+  * The sidecar records the name and length of the shard file it was built from. Shard names carry the
+  * manifest generation, so a shard that gains or loses players is written under a new name. The only change
+  * made to a shard file in place is ShardedSnapshot.updateInPlace() overwriting the score and date of existing
+  * binary records: names, record offsets and the file's length stay the same, and the sidecar holds no scores,
+  * so it still describes the file. A matching name and length (plus the sidecar's own CRC32) therefore proves
+  * the index is current. A missing, stale or damaged sidecar is rebuilt from the shard.
+  * Compressed shards cannot be addressed by offset and are never indexed.
+  *
+  * Layout (big-endian; strings are an int byte length followed by UTF-8 bytes):
+  *   header: magic (int "LBSI"), version (short), binary shard (byte), shard file name (string), shard length (long),
+  *           entry count (int), player count (int), game count (int), table capacity (int, a power of two)
+  *   names:  (player count + game count) x name offset (int, from the start of the sidecar), then the names (strings)
+  *   table:  capacity x [player name hash (long), record offset (long, -1 for an empty slot)]
+  *   footer: CRC32 of everything before it (int)
+  */
+ static class ShardIndex {
+     static final int MAGIC = 0x4C425349; // "LBSI" - Leaderboard Shard Index.
+     static final short VERSION = 1;      // Current sidecar version.
+     static final String EXTENSION = ".idx"; // Appended to the shard file's name.
+     // Build and use index sidecars for shards.
+     static final boolean ENABLED = Boolean.getBoolean("leaderboard.shardIndex");
+
+     private static final long EMPTY = -1L; // Record offset of an unused table slot.
+
+     private final ByteBuffer index;  // The sidecar, read into memory.
+     private final File shardFile;    // The shard file, opened for each lookup.
+     private final boolean binary;    // True for a binary shard (fixed-width records), false for text lines.
+     private final int entryCount;    // Number of indexed records.
+     private final int playerCount;   // Names in the player dictionary.
+     private final int gameCount;     // Names in the game dictionary.
+     private final int nameOffsets;   // Sidecar offset of the name offset array.
+     private final int tableStart;    // Sidecar offset of the hash table.
+     private final int capacity;      // Number of table slots.
+
+     private ShardIndex(ByteBuffer index, File shardFile, boolean binary, int entryCount, int playerCount, int gameCount,
+                        int nameOffsets, int tableStart, int capacity) {
+         this.index = index;
+         this.shardFile = shardFile;
+         this.binary = binary;
+         this.entryCount = entryCount;
+         this.playerCount = playerCount;
+         this.gameCount = gameCount;
+         this.nameOffsets = nameOffsets;
+         this.tableStart = tableStart;
+         this.capacity = capacity;
+     }
+
+     /**
+      * @param shardFile A shard file.
+      * @return The sidecar file that indexes it.
+      */
+     static File sidecarFor(File shardFile) {
+         return new File(shardFile.getPath() + EXTENSION);
+     }
+
+     /**
+      * Opens the sidecar of a shard if it exists and matches the shard.
+      * @param shardFile The shard file.
+      * @return The index, or null if the sidecar is missing, stale or damaged.
+      * @throws IOException If a file exists but cannot be read.
+      */
+     public static ShardIndex open(File shardFile) throws IOException {
+         File sidecar = sidecarFor(shardFile);
+         if (!sidecar.exists() || !shardFile.exists() || sidecar.length() > Integer.MAX_VALUE) return null;
+         ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(sidecar.toPath()));
+         int length = index.limit();
+         if (length < 8 || index.getInt(0) != MAGIC || index.getShort(4) != VERSION) return null;
+         CRC32 crc = new CRC32();
+         crc.update(index.duplicate().limit(length - 4));
+         if ((int) crc.getValue() != index.getInt(length - 4)) return null; // Torn or damaged sidecar.
+
+         index.position(6);
+         boolean binary = index.get() != 0;
+         String shardName = readString(index);
+         long shardLength = index.getLong();
+         if (!shardName.equals(shardFile.getName()) || shardLength != shardFile.length()) return null; // Built for another shard.
+         int entryCount = index.getInt();
+         int playerCount = index.getInt();
+         int gameCount = index.getInt();
+         int capacity = index.getInt();
+         int nameOffsets = index.position();
+         int tableStart = length - 4 - capacity * 16;
+         return new ShardIndex(index, shardFile, binary, entryCount, playerCount, gameCount, nameOffsets, tableStart, capacity);
+     }
+
+     /**
+      * Builds the sidecar of a shard from scratch (a full read of the shard) and opens it.
+      * @param shardFile The shard file.
+      * @return The new index, or null if the shard cannot be indexed (compressed or too large to read into memory).
+      * @throws IOException If the shard cannot be read or the sidecar cannot be written.
+      */
+     public static ShardIndex build(File shardFile) throws IOException {
+         if (!shardFile.exists() || shardFile.length() > Integer.MAX_VALUE) return null;
+         int magic = ScoreSnapshot.readMagic(shardFile);
+         if (magic == CompressedSnapshot.MAGIC) return null;
+         boolean binary = magic == BinaryScoreFile.MAGIC;
+
+         // Player name -> record offset (the last record for a player wins, as when loading), plus the dictionaries.
+         LinkedHashMap<String, Long> offsets = new LinkedHashMap<>();
+         ArrayList<String> playerNames = new ArrayList<>();
+         ArrayList<String> gameNames = new ArrayList<>();
+         if (binary) {
+             long recordsStart;
+             try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(shardFile)));
+                  DataInputStream in = new DataInputStream(counter)) {
+                 in.readInt();
+                 in.readShort();
+                 in.readShort();
+                 int players = in.readInt();
+                 int games = in.readInt();
+                 int records = in.readInt();
+                 for (int i = 0; i < players; i++) playerNames.add(in.readUTF());
+                 for (int i = 0; i < games; i++) gameNames.add(in.readUTF());
+                 recordsStart = counter.getCount();
+                 for (int i = 0; i < records; i++) {
+                     long offset = recordsStart + (long) i * BinaryScoreFile.RECORD_SIZE;
+                     int nameId = in.readInt();
+                     in.skipBytes(BinaryScoreFile.RECORD_SIZE - 4);
+                     if (nameId < 0 || nameId >= players) throw new IOException("Corrupt record in " + shardFile);
+                     offsets.remove(playerNames.get(nameId));
+                     offsets.put(playerNames.get(nameId), offset);
+                 }
+             }
+         } else {
+             // Parse every line the way loading does, so skipped lines are not indexed either.
+             ByteBuffer text = ByteBuffer.wrap(Files.readAllBytes(shardFile.toPath()));
+             MappedTextScoreLoader.ChunkParser parser = new MappedTextScoreLoader.ChunkParser();
+             HashSet<String> seenGames = new HashSet<>();
+             int end = text.limit();
+             int lineStart = 0;
+             while (lineStart < end) {
+                 int lineEnd = MappedTextScoreLoader.indexOf(text, (byte) '\n', lineStart, end);
+                 if (lineEnd < 0) lineEnd = end - 1;
+                 parser.partial.clear();
+                 parser.parseLines(text, lineStart, lineEnd + 1);
+                 for (ScoreEntry entry : parser.partial.values()) {
+                     if (offsets.remove(entry.getName()) == null) playerNames.add(entry.getName());
+                     offsets.put(entry.getName(), (long) lineStart);
+                     if (seenGames.add(entry.getGameName())) gameNames.add(entry.getGameName());
+                 }
+                 lineStart = lineEnd + 1;
+             }
+         }
+
+         // Lay out the table: linear probing, at most half full so every probe sequence ends at an empty slot.
+         int capacity = Integer.highestOneBit(Math.max(2, offsets.size() * 2 + 1) - 1) << 1;
+         long[] hashes = new long[capacity];
+         long[] recordOffsets = new long[capacity];
+         Arrays.fill(recordOffsets, EMPTY);
+         for (Map.Entry<String, Long> player : offsets.entrySet()) {
+             long hash = hash(player.getKey());
+             int slot = (int) (hash & (capacity - 1));
+             while (recordOffsets[slot] != EMPTY) slot = (slot + 1) & (capacity - 1);
+             hashes[slot] = hash;
+             recordOffsets[slot] = player.getValue();
+         }
+
+         byte[] shardName = shardFile.getName().getBytes(StandardCharsets.UTF_8);
+         ArrayList<byte[]> names = new ArrayList<>();
+         for (String name : playerNames) names.add(name.getBytes(StandardCharsets.UTF_8));
+         for (String name : gameNames) names.add(name.getBytes(StandardCharsets.UTF_8));
+         int headerLength = 4 + 2 + 1 + 4 + shardName.length + 8 + 4 + 4 + 4 + 4;
+         int nameOffset = headerLength + names.size() * 4;
+
+         File sidecar = sidecarFor(shardFile);
+         File tempFile = new File(sidecar.getPath() + ".tmp");
+         CRC32 crc = new CRC32();
+         try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16), crc))) {
+             out.writeInt(MAGIC);
+             out.writeShort(VERSION);
+             out.writeByte(binary ? 1 : 0);
+             out.writeInt(shardName.length);
+             out.write(shardName);
+             out.writeLong(shardFile.length());
+             out.writeInt(offsets.size());
+             out.writeInt(playerNames.size());
+             out.writeInt(gameNames.size());
+             out.writeInt(capacity);
+             for (byte[] name : names) {
+                 out.writeInt(nameOffset);
+                 nameOffset += 4 + name.length;
+             }
+             for (byte[] name : names) {
+                 out.writeInt(name.length);
+                 out.write(name);
+             }
+             for (int slot = 0; slot < capacity; slot++) {
+                 out.writeLong(hashes[slot]);
+                 out.writeLong(recordOffsets[slot]);
+             }
+             out.flush();
+             out.writeInt((int) crc.getValue()); // Everything written so far has passed through the checksum.
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, sidecar);
+         return open(shardFile);
+     }
+
+     /**
+      * Looks up a player's entry in the shard, decoding only that player's record.
+      * @param playerName The exact player name.
+      * @return The entry, or null if the player has no score in this shard.
+      * @throws IOException If the shard cannot be read.
+      */
+     public ScoreEntry get(String playerName) throws IOException {
+         try (FileChannel channel = FileChannel.open(shardFile.toPath(), StandardOpenOption.READ)) {
+             long offset = recordOffset(channel, playerName);
+             return offset == EMPTY ? null : resolve(channel, offset);
+         }
+     }
+
+     /**
+      * Finds the byte offset of a player's record (a line for text shards) in the shard.
+      * @param playerName The exact player name.
+      * @return The offset, or -1 if the player has no score in this shard.
+      * @throws IOException If the shard cannot be read.
+      */
+     public long recordOffset(String playerName) throws IOException {
+         try (FileChannel channel = FileChannel.open(shardFile.toPath(), StandardOpenOption.READ)) {
+             return recordOffset(channel, playerName);
+         }
+     }
+
+     /**
+      * Probes the table for a player, decoding the record of every slot whose hash matches to confirm the name.
+      */
+     private long recordOffset(FileChannel channel, String playerName) throws IOException {
+         long hash = hash(playerName);
+         int mask = capacity - 1;
+         for (int slot = (int) (hash & mask); ; slot = (slot + 1) & mask) {
+             int at = tableStart + slot * 16;
+             long offset = index.getLong(at + 8);
+             if (offset == EMPTY) return EMPTY;
+             if (index.getLong(at) == hash) {
+                 ScoreEntry entry = resolve(channel, offset);
+                 if (entry != null && entry.getName().equals(playerName)) return offset;
+             }
+         }
+     }
+
+     /**
+      * Lists the players of the shard's dictionary that match a condition, without touching the shard itself.
+      * @param condition The test each player name must pass.
+      * @return The matching player names.
+      */
+     public List<String> findPlayers(Predicate<String> condition) {
+         ArrayList<String> matches = new ArrayList<>();
+         for (int i = 0; i < playerCount; i++) {
+             String name = nameAt(i);
+             if (condition.test(name)) matches.add(name);
+         }
+         return matches;
+     }
+
+     /**
+      * @return The number of entries in the shard.
+      */
+     public int size() {
+         return entryCount;
+     }
+
+     /**
+      * Decodes the record at a shard offset: a fixed-width record, or the text line starting there.
+      */
+     private ScoreEntry resolve(FileChannel channel, long offset) throws IOException {
+         if (binary) {
+             ByteBuffer record = ByteBuffer.allocate(BinaryScoreFile.RECORD_SIZE);
+             while (record.hasRemaining()) {
+                 if (channel.read(record, offset + record.position()) < 0) return null; // Past the end of the shard.
+             }
+             int nameId = record.getInt(0);
+             int gameId = record.getInt(4);
+             int score = record.getInt(8);
+             int epochDay = record.getInt(12);
+             if (nameId < 0 || nameId >= playerCount || gameId < 0 || gameId >= gameCount) return null;
+             return new ScoreEntry(nameAt(nameId), Math.max(0, score), epochDay, nameAt(playerCount + gameId));
+         }
+         ByteBuffer line = ByteBuffer.allocate(256);
+         int end = -1;
+         while (end < 0) {
+             if (!line.hasRemaining()) line = ByteBuffer.allocate(line.capacity() * 2).put(line.flip()); // A long line.
+             int searchFrom = line.position();
+             if (channel.read(line, offset + line.position()) < 0) break; // The last line has no line break.
+             end = MappedTextScoreLoader.indexOf(line, (byte) '\n', searchFrom, line.position());
+         }
+         MappedTextScoreLoader.ChunkParser parser = new MappedTextScoreLoader.ChunkParser();
+         parser.parseLines(line, 0, end < 0 ? line.position() : end + 1);
+         return parser.partial.isEmpty() ? null : parser.partial.values().iterator().next();
+     }
+
+     /**
+      * Decodes a dictionary name: players first, then games.
+      */
+     private String nameAt(int nameIndex) {
+         int offset = index.getInt(nameOffsets + nameIndex * 4);
+         int length = index.getInt(offset);
+         byte[] bytes = new byte[length];
+         index.get(offset + 4, bytes);
+         return new String(bytes, StandardCharsets.UTF_8);
+     }
+
+     /**
+      * A 64-bit FNV-1a hash of a player name, so table collisions (which cost a record decode) are rare.
+      */
+     static long hash(String playerName) {
+         long hash = 0xcbf29ce484222325L;
+         for (int i = 0; i < playerName.length(); i++) {
+             hash ^= playerName.charAt(i);
+             hash *= 0x100000001b3L;
+         }
+         return hash;
+     }
+
+     /**
+      * Reads a length-prefixed UTF-8 string at the buffer's position.
+      */
+     private static String readString(ByteBuffer buffer) {
+         byte[] bytes = new byte[buffer.getInt()];
+         buffer.get(bytes);
+         return new String(bytes, StandardCharsets.UTF_8);
+     }
+ }
+
+ /**
+  * The snapshot stored as one file ("shard") per game in the "scores.d" folder, listed by a small manifest.
+  * Folding a log segment in rewrites only the shards of games the segment touched; a deleted game's shard
+  * is simply dropped from the manifest and its file deleted; and a load can skip games it does not need.
+  *
+  * Shard files are named after the game's shard id and the manifest generation that wrote them
+  * ("game-7.42.txt"), so a rewritten shard never replaces a file the current manifest still lists.
+  * The new manifest is swapped in atomically as the last step, so a crash at any point of a rewrite leaves
+  * either the old or the new snapshot complete; files no manifest refers to are deleted afterwards.
+  * Until the first manifest exists, the legacy single-file snapshot ("scores.txt" or "scores.dat") is
+  * read instead, and the first compaction splits it into shards.
+  *
+  * The one exception is a segment that only changes the scores and dates of players a binary shard already
+  * holds: those records are overwritten in place, one positional write per changed record (see updateInPlace).
+  * That does not keep the old snapshot intact: a crash part-way can leave the shard with some records new and
+  * others old (a record's 8 bytes may even be torn). The shard stays readable, since names and offsets never
+  * change, and the log segment is only deleted after the fold, so it is replayed over the shard on the next
+  * start and restores every changed record.
+  *
+  * Next to the shards the manifest lists a player dictionary: every player name with the number of
+  * entries it has across all games. Together with the manifest's per-game entry counts, this lets the
+  * application show every game and player without opening a single shard (see GameResidency).
+  *
+  * Manifest layout (big-endian):
+  *   header: magic (int "LBSM"), version (short), generation (long), next shard id (int),
+  *           player dictionary file name (UTF, version 2 and later; empty if none), shard count (int)
+  *   shards: shard count x [game name (UTF), shard id (int), file name (UTF), entry count (int)]
+  * Player dictionary layout: magic (int "LBSP"), player count (int), then per player: name (UTF), entry count (int).
+  */
+ static class ShardedSnapshot {
+     static final int MANIFEST_MAGIC = 0x4C42534D; // "LBSM" - Leaderboard Shard Manifest.
+     static final short MANIFEST_VERSION = 2;      // Current manifest version (1 had no player dictionary).
+     static final String MANIFEST_FILE_NAME = "manifest";
+     static final int PLAYERS_MAGIC = 0x4C425350;  // "LBSP" - Leaderboard Shard Players.
+
+     /**
+      * One game's shard file as listed in the manifest.
+      */
+     static class Shard {
+         final int id;          // Stable id of the game's shard, part of every file name it is written to.
+         final String fileName; // Current file, relative to the shard folder.
+         final int entryCount;  // Number of entries in the file.
+
+         Shard(int id, String fileName, int entryCount) {
+             this.id = id;
+             this.fileName = fileName;
+             this.entryCount = entryCount;
+         }
+     }
+
+     /**
+      * The contents of a manifest: which file holds each game's entries.
+      */
+     static class Manifest {
+         long generation;  // Increases with every manifest written.
+         int nextShardId;  // Id given to the next game that gets a shard.
+         String playersFileName = ""; // Player dictionary file, relative to the shard folder (empty if none).
+         final LinkedHashMap<String, Shard> shards = new LinkedHashMap<>(); // Game name -> shard.
+     }
+
+     /**
+      * The changes a log segment makes to one game.
+      */
+     private static class GameChanges {
+         boolean dropped; // The game was deleted; entries from before the deletion are discarded.
+         // Player name -> newest entry, or null if the player's entry was deleted.
+         final LinkedHashMap<String, ScoreEntry> entries = new LinkedHashMap<>();
+     }
+
+     private final File directory;        // Folder holding the manifest and shard files.
+     private final SnapshotFormat format; // Format new shards are written in.
+     private final boolean compressed;    // Whether new shards are wrapped in a CompressedSnapshot.
+
+     /**
+      * Constructor for ShardedSnapshot.
+      * @param directory The shard folder; it is created by the first compaction.
+      * @param format The format new shards are written in.
+      * @param compressed Whether new shards are compressed. Shards are read either way.
+      */
+     public ShardedSnapshot(File directory, SnapshotFormat format, boolean compressed) {
+         this.directory = directory;
+         this.format = format;
+         this.compressed = compressed;
+     }
+
+     /**
+      * Reads the current manifest.
+      * @return The manifest, or null if the snapshot has not been split into shards yet.
+      * @throws IOException If the manifest exists but cannot be read.
+      */
+     public Manifest readManifest() throws IOException {
+         File file = new File(directory, MANIFEST_FILE_NAME);
+         if (!file.exists()) return null;
+         try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+             if (in.readInt() != MANIFEST_MAGIC) throw new IOException(file + " is not a shard manifest");
+             short version = in.readShort();
+             if (version < 1 || version > MANIFEST_VERSION) throw new IOException("Unsupported manifest version " + version + " in " + file);
+             Manifest manifest = new Manifest();
+             manifest.generation = in.readLong();
+             manifest.nextShardId = in.readInt();
+             if (version >= 2) manifest.playersFileName = in.readUTF();
+             int shardCount = in.readInt();
+             for (int i = 0; i < shardCount; i++) {
+                 String gameName = in.readUTF();
+                 int id = in.readInt();
+                 String fileName = in.readUTF();
+                 manifest.shards.put(gameName, new Shard(id, fileName, in.readInt()));
+             }
+             return manifest;
+         }
+     }
+
+     /**
+      * Writes a manifest, replacing the current one atomically.
+      * @param manifest The manifest to write.
+      * @throws IOException If writing fails.
+      */
+     private void writeManifest(Manifest manifest) throws IOException {
+         File file = new File(directory, MANIFEST_FILE_NAME);
+         File tempFile = new File(directory, MANIFEST_FILE_NAME + ".tmp");
+         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+             out.writeInt(MANIFEST_MAGIC);
+             out.writeShort(MANIFEST_VERSION);
+             out.writeLong(manifest.generation);
+             out.writeInt(manifest.nextShardId);
+             out.writeUTF(manifest.playersFileName);
+             out.writeInt(manifest.shards.size());
+             for (Map.Entry<String, Shard> shard : manifest.shards.entrySet()) {
+                 out.writeUTF(shard.getKey());
+                 out.writeInt(shard.getValue().id);
+                 out.writeUTF(shard.getValue().fileName);
+                 out.writeInt(shard.getValue().entryCount);
+             }
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, file);
+     }
+
+     /**
+      * Reads the player dictionary a manifest refers to.
+      * @param manifest The manifest, or null.
+      * @return Player name -> number of entries across all shards, or null if the manifest has no dictionary.
+      * @throws IOException If the dictionary exists but cannot be read.
+      */
+     public HashMap<String, Integer> readPlayerCounts(Manifest manifest) throws IOException {
+         if (manifest == null || manifest.playersFileName.isEmpty()) return null;
+         File file = new File(directory, manifest.playersFileName);
+         try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+             if (in.readInt() != PLAYERS_MAGIC) throw new IOException(file + " is not a player dictionary");
+             int playerCount = in.readInt();
+             HashMap<String, Integer> counts = new HashMap<>(Math.max(16, playerCount * 2));
+             for (int i = 0; i < playerCount; i++) {
+                 String name = in.readUTF();
+                 counts.put(name, in.readInt());
+             }
+             return counts;
+         }
+     }
+
+     /**
+      * Writes a player dictionary file.
+      * @param file The file to write.
+      * @param counts Player name -> number of entries; players without entries are left out.
+      * @throws IOException If writing fails.
+      */
+     private void writePlayerCounts(File file, Map<String, Integer> counts) throws IOException {
+         File tempFile = new File(file.getPath() + ".tmp");
+         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+             out.writeInt(PLAYERS_MAGIC);
+             out.writeInt((int) counts.values().stream().filter(count -> count > 0).count());
+             for (Map.Entry<String, Integer> player : counts.entrySet()) {
+                 if (player.getValue() <= 0) continue;
+                 out.writeUTF(player.getKey());
+                 out.writeInt(player.getValue());
+             }
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, file);
+     }
+
+     /**
+      * Reads the entries of one shard into a map keyed by getCompositeKey().
+      * A shard file is never rewritten under the same name (in-place record updates only touch games that
+      * have changed), so a Shard taken from any manifest can be read for as long as its game has not been changed since.
+      * @param shard The shard to read.
+      * @param target The map that receives the entries.
+      * @throws IOException If the shard file cannot be read.
+      */
+     public void loadShard(Shard shard, Map<Long, ScoreEntry> target) throws IOException {
+         ScoreSnapshot.read(new File(directory, shard.fileName), target);
+     }
+
+     /**
+      * Opens the index sidecar of a shard, building it first if it is missing or stale.
+      * @param shard The shard to index.
+      * @return The index, or null if indexes are disabled or the shard cannot be indexed (for example a compressed shard).
+      */
+     public ShardIndex openIndex(Shard shard) {
+         if (!ShardIndex.ENABLED) return null;
+         File shardFile = new File(directory, shard.fileName);
+         try {
+             ShardIndex index = ShardIndex.open(shardFile);
+             return index != null ? index : ShardIndex.build(shardFile);
+         } catch (IOException e) {
+             System.err.println("Could not open the index of " + shardFile + ": " + e.getMessage());
+             return null;
+         }
+     }
+
+     /**
+      * Reads the snapshot into a map keyed by getCompositeKey().
+      * @param target The map that receives the entries.
+      * @param includeGame Decides per game whether its entries are read; shards of other games are not opened.
+      * @throws IOException If the manifest or a shard cannot be read.
+      */
+     public void load(Map<Long, ScoreEntry> target, Predicate<String> includeGame) throws IOException {
+         Manifest manifest = readManifest();
+         if (manifest == null) {
+             // Not split into shards yet: read the legacy single file and keep the wanted games.
+             HashMap<Long, ScoreEntry> legacy = new HashMap<>();
+             ScoreSnapshot.read(format.legacySnapshotFile(directory.getParentFile()), legacy);
+             legacy.values().removeIf(entry -> !includeGame.test(entry.getGameName()));
+             target.putAll(legacy);
+             return;
+         }
+         for (Map.Entry<String, Shard> shard : manifest.shards.entrySet()) {
+             if (includeGame.test(shard.getKey())) {
+                 loadShard(shard.getValue(), target);
+             }
+         }
+     }
+
+     /**
+      * Folds a sealed log segment into the snapshot. Only the shards of games the segment touches are read
+      * and rewritten; deleted games and games left without entries lose their shard.
+      * Replaying a segment that is already part of the snapshot gives the same result, so an interrupted
+      * run can simply be repeated.
+      * @param segment The sealed log segment.
+      * @throws IOException If a file cannot be read or written.
+      */
+     public void applySegment(File segment) throws IOException {
+         // Group the segment's changes by game, keeping only the newest change per player.
+         LinkedHashMap<String, GameChanges> changes = new LinkedHashMap<>();
+         new ScoreLog(segment).replay(
+                 entry -> changes.computeIfAbsent(entry.getGameName(), gameName -> new GameChanges()).entries.put(entry.getName(), entry),
+                 (name, gameName) -> changes.computeIfAbsent(gameName, g -> new GameChanges()).entries.put(name, null),
+                 gameName -> {
+                     GameChanges dropped = new GameChanges(); // Earlier changes to the game no longer matter.
+                     dropped.dropped = true;
+                     changes.put(gameName, dropped);
+                 });
+
+         Manifest current = readManifest();
+         HashMap<String, Integer> playerCounts = readPlayerCounts(current); // Updated per rewritten shard below.
+         HashMap<String, List<ScoreEntry>> legacyByGame = null;
+         if (current == null) {
+             // First compaction since the upgrade: every game of the legacy snapshot gets a shard.
+             current = new Manifest();
+             legacyByGame = new HashMap<>();
+             HashMap<Long, ScoreEntry> legacy = new HashMap<>();
+             ScoreSnapshot.read(format.legacySnapshotFile(directory.getParentFile()), legacy);
+             for (ScoreEntry entry : legacy.values()) {
+                 legacyByGame.computeIfAbsent(entry.getGameName(), gameName -> new ArrayList<>()).add(entry);
+             }
+             playerCounts = new HashMap<>(); // The legacy entries are counted as they are written.
+         } else if (playerCounts == null) {
+             // A manifest from before player dictionaries: count every shard once.
+             playerCounts = new HashMap<>();
+             for (Shard shard : current.shards.values()) {
+                 for (ScoreEntry entry : readShard(shard)) playerCounts.merge(entry.getName(), 1, Integer::sum);
+             }
+         }
+
+         Manifest next = new Manifest();
+         next.generation = current.generation + 1;
+         next.nextShardId = current.nextShardId;
+         next.shards.putAll(current.shards);
+
+         LinkedHashSet<String> touchedGames = new LinkedHashSet<>(changes.keySet());
+         if (legacyByGame != null) touchedGames.addAll(legacyByGame.keySet());
+         if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Could not create " + directory);
+
+         for (String gameName : touchedGames) {
+             GameChanges gameChanges = changes.get(gameName);
+             if (legacyByGame == null && updateInPlace(current.shards.get(gameName), gameChanges)) {
+                 continue; // Same players, same file: the shard, its index and the player counts all stay valid.
+             }
+             Collection<ScoreEntry> previous = legacyByGame != null
+                     ? legacyByGame.getOrDefault(gameName, Collections.emptyList())
+                     : readShard(current.shards.get(gameName));
+             // Player name -> entry, starting from the game's current contents unless it was deleted.
+             LinkedHashMap<String, ScoreEntry> entries = new LinkedHashMap<>();
+             if (gameChanges == null || !gameChanges.dropped) {
+                 for (ScoreEntry entry : previous) entries.put(entry.getName(), entry);
+             }
+             if (gameChanges != null) {
+                 for (Map.Entry<String, ScoreEntry> change : gameChanges.entries.entrySet()) {
+                     if (change.getValue() == null) {
+                         entries.remove(change.getKey());
+                     } else {
+                         entries.put(change.getKey(), change.getValue());
+                     }
+                 }
+             }
+
+             // Move the game's share of the player counts from its old contents to its new ones.
+             if (legacyByGame == null) {
+                 for (ScoreEntry entry : previous) playerCounts.merge(entry.getName(), -1, Integer::sum);
+             }
+             for (String playerName : entries.keySet()) playerCounts.merge(playerName, 1, Integer::sum);
+
+             Shard previousShard = next.shards.get(gameName);
+             if (entries.isEmpty()) {
+                 next.shards.remove(gameName); // Deleting a game only drops its file.
+                 continue;
+             }
+             int id = previousShard != null ? previousShard.id : next.nextShardId++;
+             File shardFile = new File(directory, "game-" + id + "." + next.generation + format.getExtension()
+                     + (compressed ? CompressedSnapshot.EXTENSION : ""));
+             if (compressed) {
+                 CompressedSnapshot.write(shardFile, format, entries.values());
+             } else {
+                 format.write(shardFile, entries.values());
+                 if (ShardIndex.ENABLED) {
+                     try {
+                         ShardIndex.build(shardFile);
+                     } catch (IOException e) {
+                         // The index is only an accelerator; it is rebuilt on first use.
+                         System.err.println("Could not index " + shardFile + ": " + e.getMessage());
+                     }
+                 }
+             }
+             next.shards.put(gameName, new Shard(id, shardFile.getName(), entries.size()));
+         }
+
+         File playersFile = new File(directory, "players." + next.generation);
+         writePlayerCounts(playersFile, playerCounts);
+         next.playersFileName = playersFile.getName();
+
+         writeManifest(next);
+         deleteUnreferencedFiles(next);
+         if (legacyByGame != null) {
+             SnapshotFormat.retireLegacySnapshots(directory.getParentFile()); // The legacy data now lives in the shards.
+         }
+     }
+
+     /**
+      * Applies a game's changes by overwriting the changed records of its shard in place, when that is possible:
+      * the shard is an uncompressed binary file (fixed-width records, each player's record in a stable slot)
+      * and every change updates the score or date of a player the shard already holds.
+      * Anything else (new or deleted players, a deleted game, text or compressed shards) needs a rewritten shard.
+      * Rewriting a slot twice stores the same values, so a repeated segment still gives the same result.
+      * @param shard The game's current shard, or null if it has none.
+      * @param gameChanges The game's changes from the segment.
+      * @return True if the changes were written into the shard; false if the shard must be rewritten instead.
+      * @throws IOException If the shard cannot be read or written.
+      */
+     private boolean updateInPlace(Shard shard, GameChanges gameChanges) throws IOException {
+         if (shard == null || gameChanges == null || gameChanges.dropped || gameChanges.entries.containsValue(null)) return false;
+         File shardFile = new File(directory, shard.fileName);
+         if (!BinaryScoreFile.isBinaryFile(shardFile)) return false;
+
+         // Find the slots: through the shard's index if it has a current one, otherwise by scanning the name ids.
+         HashMap<String, Long> slots;
+         ShardIndex index = ShardIndex.ENABLED ? ShardIndex.open(shardFile) : null;
+         if (index != null) {
+             slots = new HashMap<>();
+             for (String playerName : gameChanges.entries.keySet()) {
+                 long offset = index.recordOffset(playerName);
+                 if (offset < 0) return false; // A new player.
+                 slots.put(playerName, offset);
+             }
+         } else {
+             slots = BinaryScoreFile.locateRecords(shardFile, gameChanges.entries.keySet());
+             if (slots.size() != gameChanges.entries.size()) return false; // A new player.
+         }
+
+         TreeMap<Long, ScoreEntry> updates = new TreeMap<>(); // In file order.
+         for (Map.Entry<String, ScoreEntry> change : gameChanges.entries.entrySet()) {
+             updates.put(slots.get(change.getKey()), change.getValue());
+         }
+         BinaryScoreFile.updateRecords(shardFile, updates);
+         return true;
+     }
+
+     /**
+      * Reads the entries of one shard.
+      * @param shard The shard, or null for a game without one.
+      * @return The shard's entries (empty for null).
+      * @throws IOException If the shard file cannot be read.
+      */
+     private Collection<ScoreEntry> readShard(Shard shard) throws IOException {
+         if (shard == null) return Collections.emptyList();
+         HashMap<Long, ScoreEntry> entries = new HashMap<>();
+         ScoreSnapshot.read(new File(directory, shard.fileName), entries);
+         return entries.values();
+     }
+
+     /**
+      * Deletes shard files (and leftover temporary files) that the given manifest does not list.
+      * A file that cannot be deleted yet (on Windows, a text shard still mapped by an earlier read until that
+      * buffer is collected) is reported and left; the next compaction lists the folder again and retries.
+      * @param manifest The manifest that was just written.
+      */
+     private void deleteUnreferencedFiles(Manifest manifest) {
+         HashSet<String> referenced = new HashSet<>();
+         referenced.add(MANIFEST_FILE_NAME);
+         referenced.add(manifest.playersFileName);
+         for (Shard shard : manifest.shards.values()) {
+             referenced.add(shard.fileName);
+             referenced.add(shard.fileName + ShardIndex.EXTENSION);
+         }
+         File[] files = directory.listFiles();
+         if (files == null) return;
+         for (File file : files) {
+             if (!referenced.contains(file.getName()) && !file.delete()) {
+                 System.err.println("Could not delete old shard file " + file);
+             }
+         }
+     }
+ }
+
+ /**
+  * Tracks which games' entries are in memory when games are loaded lazily ("leaderboard.lazyLoading=true").
+  * At startup only the manifest and the player dictionary are read; a game's shard is read ("faulted in")
+  * the first time the game is selected or queried. Games whose in-memory entries still match their shard
+  * ("clean") can be dropped from memory again, least recently used first, once more entries are loaded
+  * than the budget allows. A game becomes dirty with its first logged mutation and then stays in memory
+  * for the rest of the session, because its shard no longer holds its latest state.
+  * When lazy loading is off, every game is loaded at startup and this class has nothing to track.
+  */
+ static class GameResidency {
+     // Read only the manifest and dictionaries at startup and fault games in on demand.
+     static final boolean LAZY_LOADING = Boolean.getBoolean("leaderboard.lazyLoading");
+     // Memory budget, in loaded entries, above which clean games are evicted.
+     static final int MAX_RESIDENT_ENTRIES = Integer.getInteger("leaderboard.lazy.maxResidentEntries", 250_000);
+
+     private final HashMap<String, ShardedSnapshot.Shard> shards = new HashMap<>();   // Shards from the startup manifest.
+     private final HashSet<String> unloaded = new HashSet<>();                         // Games that are only on disk.
+     // Loaded clean games -> entry count, in least-recently-used-first order.
+     private final LinkedHashMap<String, Integer> clean = new LinkedHashMap<>(16, 0.75f, true);
+     private int unloadedEntries; // Total entries of the unloaded games' shards.
+
+     /**
+      * Starts tracking the shards of a manifest; every game begins unloaded.
+      * @param manifest The manifest read at startup.
+      */
+     public void start(ShardedSnapshot.Manifest manifest) {
+         shards.putAll(manifest.shards);
+         unloaded.addAll(manifest.shards.keySet());
+         for (ShardedSnapshot.Shard shard : manifest.shards.values()) unloadedEntries += shard.entryCount;
+     }
+
+     /**
+      * @param gameName A game name.
+      * @return True if the game's entries are in memory (always true for games without a shard).
+      */
+     public boolean isLoaded(String gameName) {
+         return !unloaded.contains(gameName);
+     }
+
+     /**
+      * @return The games whose entries are only on disk.
+      */
+     public Set<String> getUnloadedGames() {
+         return new HashSet<>(unloaded);
+     }
+
+     /**
+      * @return The number of entries in the unloaded games' shards.
+      */
+     public int getUnloadedEntryCount() {
+         return unloadedEntries;
+     }
+
+     /**
+      * @param gameName An unloaded game.
+      * @return The shard holding the game's entries.
+      */
+     public ShardedSnapshot.Shard getShard(String gameName) {
+         return shards.get(gameName);
+     }
+
+     /**
+      * Records that a game's shard has been read into memory unchanged.
+      * @param gameName The game.
+      * @param entryCount The number of entries read.
+      */
+     public void markLoaded(String gameName, int entryCount) {
+         if (unloaded.remove(gameName)) {
+             unloadedEntries -= shards.get(gameName).entryCount;
+             clean.put(gameName, entryCount);
+         }
+     }
+
+     /**
+      * Records that a game has a mutation that is not in its shard; it will not be evicted again.
+      * @param gameName The mutated game.
+      */
+     public void markDirty(String gameName) {
+         if (unloaded.remove(gameName)) unloadedEntries -= shards.get(gameName).entryCount;
+         clean.remove(gameName);
+     }
+
+     /**
+      * Marks a game as the most recently used one.
+      * @param gameName The game being looked at.
+      */
+     public void touch(String gameName) {
+         clean.get(gameName); // An access-ordered map moves the game to the end.
+     }
+
+     /**
+      * Picks clean games to evict, least recently used first, until the loaded entries fit the budget.
+      * @param residentEntries The number of entries currently in memory.
+      * @param keepGame A game that must stay loaded (e.g. the one on screen), or null.
+      * @return The games to evict; empty if the budget is not exceeded.
+      */
+     public List<String> chooseEvictions(int residentEntries, String keepGame) {
+         ArrayList<String> victims = new ArrayList<>();
+         int remaining = residentEntries;
+         for (Map.Entry<String, Integer> game : clean.entrySet()) {
+             if (remaining <= MAX_RESIDENT_ENTRIES) break;
+             if (game.getKey().equals(keepGame)) continue;
+             victims.add(game.getKey());
+             remaining -= game.getValue();
+         }
+         return victims;
+     }
+
+     /**
+      * Records that a clean game's entries have been dropped from memory.
+      * @param gameName The evicted game.
+      */
+     public void markEvicted(String gameName) {
+         if (clean.remove(gameName) != null) {
+             unloaded.add(gameName);
+             unloadedEntries += shards.get(gameName).entryCount;
+         }
+     }
+ }
+
+ /**
+  * Folds a sealed log segment into the sharded snapshot on a single background thread.
+  * The compactor only works with files (old snapshot + sealed segment -> new snapshot), never with the
+  * application's in-memory structures, so it needs no locking against the event thread.
+  * If the process stops mid-compaction, the sealed segment is still on disk and is replayed on the
+  * next start; replaying it over a snapshot that already contains it gives the same result.
+  */
+ static class ScoreCompactor {
+     // Never compact a log with fewer records than this; tiny logs replay instantly.
+     static final long MIN_LOG_RECORDS = Long.getLong("leaderboard.compaction.minRecords", 1_000L);
+     // Compact once the log holds this many records per live entry (e.g. 0.5 = half as many records as entries).
+     static final double LOG_TO_ENTRY_RATIO = Double.parseDouble(System.getProperty("leaderboard.compaction.ratio", "0.5"));
+     // Compact once the log reaches this many bytes, regardless of the ratio.
+     static final long MAX_LOG_BYTES = Long.getLong("leaderboard.compaction.maxLogBytes", 16L * 1024 * 1024);
+
+     private final ShardedSnapshot snapshot; // The snapshot the sealed segment is folded into.
+     private final File sealedLogFile;       // The sealed segment that is folded in and then deleted.
+     private final AtomicBoolean busy = new AtomicBoolean(false); // True while a compaction is queued or running.
+     // A single daemon thread, so compactions never overlap and never keep the JVM alive.
+     private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+         Thread thread = new Thread(runnable, "score-compactor");
+         thread.setDaemon(true);
+         return thread;
+     });
+
+     /**
+      * Constructor for ScoreCompactor.
+      * @param snapshot The snapshot the sealed segment is folded into.
+      * @param sealedLogFile The sealed log segment to fold into the snapshot.
+      */
+     public ScoreCompactor(ShardedSnapshot snapshot, File sealedLogFile) {
+         this.snapshot = snapshot;
+         this.sealedLogFile = sealedLogFile;
+     }
+
+     /**
+      * Decides whether the active log has grown enough to be worth compacting.
+      * @param log The active mutation log.
+      * @param liveEntries The number of entries currently held in memory.
+      * @return True if the log crossed the size or ratio threshold.
+      */
+     public boolean shouldCompact(ScoreLog log, int liveEntries) {
+         long records = log.getRecordCount();
+         if (records < MIN_LOG_RECORDS) return false;
+         return records >= LOG_TO_ENTRY_RATIO * Math.max(1, liveEntries) || log.getByteSize() >= MAX_LOG_BYTES;
+     }
+
+     /**
+      * Reports whether the sealed segment slot is in use. It is in use while a compaction is queued or
+      * running, and also after a failed compaction left its segment behind (that segment must not be overwritten).
+      * @return True if the active log must not be sealed right now.
+      */
+     public boolean isBusy() {
+         return busy.get() || sealedLogFile.exists();
+     }
+
+     /**
+      * Queues a compaction of the sealed segment, unless one is already queued or running.
+      */
+     public void compactInBackground() {
+         if (!busy.compareAndSet(false, true)) return;
+         executor.execute(() -> {
+             try {
+                 compact();
+             } catch (IOException e) {
+                 // The sealed segment stays on disk, so no data is lost; the next start retries.
+                 System.err.println("Score log compaction failed: " + e.getMessage());
+                 e.printStackTrace();
+             } finally {
+                 busy.set(false);
+             }
+         });
+     }
+
+     /**
+      * Folds the sealed segment into the snapshot (rewriting only the shards it touches) and deletes the segment.
+      * @throws IOException If any file cannot be read, written or deleted.
+      */
+     private void compact() throws IOException {
+         snapshot.applySegment(sealedLogFile);
+         Files.delete(sealedLogFile.toPath()); // Only after the new manifest is safely in place.
+     }
+ }
+
+ /**
+  * An immutable put, delete or game deletion, captured when the mutation happens and written to the log later.
+  */
+ static class LogRecord {
+     final byte op;          // ScoreLog.OP_PUT, ScoreLog.OP_DELETE or ScoreLog.OP_DROP_GAME.
+     final String name;      // Player's name.
+     final String gameName;  // Game's name.
+     final int score;        // New score (puts only).
+     final long epochDay;    // New date as an epoch day (puts only).
+
+     private LogRecord(byte op, String name, String gameName, int score, long epochDay) {
+         this.op = op;
+         this.name = name;
+         this.gameName = gameName;
+         this.score = score;
+         this.epochDay = epochDay;
+     }
+
+     /**
+      * @param entry The added or modified entry.
+      * @return A put record holding the entry's current score and date.
+      */
+     static LogRecord put(ScoreEntry entry) {
+         return new LogRecord(ScoreLog.OP_PUT, entry.getName(), entry.getGameName(), entry.getScore(), entry.getEpochDay());
+     }
+
+     /**
+      * @param name The player's name.
+      * @param gameName The game's name.
+      * @return A delete record for the player/game pair.
+      */
+     static LogRecord delete(String name, String gameName) {
+         return new LogRecord(ScoreLog.OP_DELETE, name, gameName, 0, 0);
+     }
+
+     /**
+      * @param gameName The deleted game's name.
+      * @return A record that deletes every entry of the game.
+      */
+     static LogRecord dropGame(String gameName) {
+         return new LogRecord(ScoreLog.OP_DROP_GAME, "", gameName, 0, 0);
+     }
+
+     /**
+      * @return The composite key (a Long) of the player/game pair this record is about; game deletions
+      *         get a key of their own (a String, so it never equals a composite key).
+      */
+     Object key() {
+         return op == ScoreLog.OP_DROP_GAME ? "\0" + gameName : (Object) ScoreEntry.key(ScoreEntry.PLAYER_NAMES.idOf(name), ScoreEntry.GAME_NAMES.idOf(gameName));
+     }
+ }
+
+ /**
+  * Writes mutation records to the ScoreLog on a single background thread ("write-behind").
+  * Submitting a record only marks the store dirty; the writer waits for a short window after the
+  * first pending record, so a burst of mutations (e.g. ten quick "Apply Quick" clicks) is written
+  * with one flush. Within a window only the newest record per player/game is kept, since it
+  * supersedes the older ones. The kept records are written in the order of their submission, so a
+  * game deletion stays between the puts made before it and those made after it.
+  *
+  * Every submitted record gets a commit ticket (an increasing sequence number). How far the writer
+  * goes before a ticket counts as committed depends on the durability mode:
+  *   NONE       - records are handed to the OS (a crash of the application loses nothing, a power cut may);
+  *                the window is the write-behind interval and nobody waits.
+  *   BATCHED    - group commit: one fsync commits every ticket in the batch. A batch closes after
+  *                GROUP_COMMIT_MS or GROUP_COMMIT_RECORDS records, whichever comes first, or as soon as
+  *                someone is waiting for a commit; records submitted during that fsync form the next group.
+  *   PER_RECORD - every record is written and fsynced on its own, with no coalescing.
+  * Callers that need the guarantee wait on their ticket with awaitCommit().
+  *
+  * The writer thread also owns the log's compaction checks. close() writes everything still
+  * pending; it is called from a shutdown hook.
+  */
+ static class WriteBehindPersister {
+     // How long the writer waits after the first pending record before writing the batch (NONE mode).
+     static final long FLUSH_INTERVAL_MS = Long.getLong("leaderboard.writeBehindMs", 250L);
+     // Longest time a group commit waits for more records before its fsync (BATCHED mode).
+     static final long GROUP_COMMIT_MS = Long.getLong("leaderboard.groupCommitMs", 5L);
+     // A group commit is started early once this many records are pending (BATCHED mode).
+     static final int GROUP_COMMIT_RECORDS = Integer.getInteger("leaderboard.groupCommitRecords", 256);
+     // Longest time awaitCommit() callers in the application wait before reporting a problem.
+     static final long COMMIT_TIMEOUT_MS = 5_000L;
+
+     /**
+      * How durable a record must be before its commit ticket completes.
+      */
+     enum Durability {
+         NONE, BATCHED, PER_RECORD;
+
+         /**
+          * Parses the "leaderboard.durability" setting: "none" (default), "batched" or "per-record".
+          * @return The configured durability mode.
+          */
+         static Durability fromSetting() {
+             String setting = System.getProperty("leaderboard.durability", "none");
+             if ("batched".equalsIgnoreCase(setting)) return BATCHED;
+             if ("per-record".equalsIgnoreCase(setting)) return PER_RECORD;
+             return NONE;
+         }
+     }
+
+     /**
+      * A queued record together with its commit ticket.
+      */
+     private static class Pending {
+         final LogRecord record;
+         final long ticket;
+
+         Pending(LogRecord record, long ticket) {
+             this.record = record;
+             this.ticket = ticket;
+         }
+     }
+
+     private final ScoreLog log;                 // The log being written (only by the writer thread or close()).
+     private final ScoreCompactor compactor;     // Folds sealed log segments into the snapshot.
+     private final File sealedLogFile;           // Where the log is moved when it is sealed for compaction.
+     private final Durability durability;        // What a completed commit ticket guarantees.
+     private final Consumer<IOException> onError; // Reports write failures to the user.
+     private final Object lock = new Object();   // Guards every field below; waiters and the writer wait on it.
+     // Records not yet written, in ticket order. Keyed by player/game so a newer record replaces an older one,
+     // except in PER_RECORD mode, where every record is kept (keyed by its ticket).
+     private LinkedHashMap<Object, Pending> pending = new LinkedHashMap<>();
+     private int pendingMutations;  // Mutations submitted since the last successful write (before coalescing).
+     private long lastTicket;       // Ticket handed to the most recent submission.
+     private long committedTicket;  // Every ticket up to this one is committed.
+     private int waiters;           // Threads currently blocked in awaitCommit().
+     private boolean running;       // False once close() has been called.
+     private volatile int liveEntries; // Entry count last reported by the application, for compaction thresholds.
+     private Thread writer;
+
+     /**
+      * Constructor for WriteBehindPersister.
+      * @param log The opened mutation log.
+      * @param compactor The compactor for sealed segments.
+      * @param sealedLogFile Where the log is moved when it is sealed.
+      * @param durability What a completed commit ticket guarantees.
+      * @param onError Called (on the writer thread) when a batch cannot be written.
+      */
+     public WriteBehindPersister(ScoreLog log, ScoreCompactor compactor, File sealedLogFile, Durability durability,
+                                 Consumer<IOException> onError) {
+         this.log = log;
+         this.compactor = compactor;
+         this.sealedLogFile = sealedLogFile;
+         this.durability = durability;
+         this.onError = onError;
+     }
+
+     /**
+      * Starts the writer thread.
+      * @param liveEntries The number of entries currently loaded.
+      */
+     public void start(int liveEntries) {
+         this.liveEntries = liveEntries;
+         running = true;
+         writer = new Thread(this::runWriter, "score-log-writer");
+         writer.setDaemon(true);
+         writer.start();
+     }
+
+     /**
+      * Queues a record. Never blocks on I/O.
+      * @param record The mutation to persist.
+      * @param liveEntries The number of entries after the mutation.
+      * @return The record's commit ticket.
+      */
+     public long submit(LogRecord record, int liveEntries) {
+         this.liveEntries = liveEntries;
+         synchronized (lock) {
+             long ticket = ++lastTicket;
+             Object slot = durability == Durability.PER_RECORD ? (Object) ticket : record.key();
+             pending.remove(slot); // Keep the newest record at the end, in ticket order.
+             pending.put(slot, new Pending(record, ticket));
+             pendingMutations++;
+             lock.notifyAll(); // Wake the writer (it may be waiting for a batch to fill up).
+             return ticket;
+         }
+     }
+
+     /**
+      * Waits until a ticket is committed. In NONE mode this returns immediately.
+      * @param ticket A ticket returned by submit().
+      * @param timeoutMs Longest time to wait.
+      * @return True if the ticket is committed, false on timeout.
+      */
+     public boolean awaitCommit(long ticket, long timeoutMs) {
+         if (durability == Durability.NONE) return true;
+         long deadline = System.currentTimeMillis() + timeoutMs;
+         synchronized (lock) {
+             waiters++;
+             lock.notifyAll(); // Lets the writer close a gathering batch now that someone is waiting.
+             try {
+                 long remaining;
+                 while (committedTicket < ticket && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                     lock.wait(remaining);
+                 }
+             } catch (InterruptedException e) {
+                 Thread.currentThread().interrupt();
+             } finally {
+                 waiters--;
+             }
+             return committedTicket >= ticket;
+         }
+     }
+
+     /**
+      * @return The number of submitted mutations that have not been written yet.
+      */
+     public int getPendingMutations() {
+         synchronized (lock) {
+             return pendingMutations;
+         }
+     }
+
+     /**
+      * @return How long the writer lets a batch gather records after the first one arrives.
+      */
+     private long batchWindowMs() {
+         switch (durability) {
+             case BATCHED: return GROUP_COMMIT_MS;
+             case PER_RECORD: return 0;
+             default: return FLUSH_INTERVAL_MS;
+         }
+     }
+
+     /**
+      * Decides whether a gathering batch should be written now, before its window runs out.
+      * Must be called while holding the lock.
+      * @return True if the batch is full, or (in BATCHED mode) someone is already waiting for it.
+      */
+     private boolean batchReady() {
+         if (durability != Durability.BATCHED) return false;
+         return pending.size() >= GROUP_COMMIT_RECORDS || waiters > 0;
+     }
+
+     /**
+      * The writer loop: wait for a record, let the batch gather for its window (or until it is full), then write it.
+      */
+     private void runWriter() {
+         // A long previous session may have left a log that is already over the compaction threshold.
+         synchronized (this) {
+             try {
+                 maybeCompact();
+             } catch (IOException | RuntimeException e) {
+                 onError.accept(asIOException(e));
+             }
+         }
+         while (true) {
+             synchronized (lock) {
+                 try {
+                     while (running && pending.isEmpty()) lock.wait();
+                     if (!running) return; // close() writes whatever is left.
+                     long deadline = System.currentTimeMillis() + batchWindowMs();
+                     long remaining;
+                     while (running && !batchReady() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                         lock.wait(remaining); // Woken by each submit and waiter; close() cuts the window short.
+                     }
+                 } catch (InterruptedException e) {
+                     return;
+                 }
+             }
+             flush();
+         }
+     }
+
+     /**
+      * Writes every pending record, makes it as durable as the mode requires, completes the tickets,
+      * then checks whether the log should be compacted. Failed records are put back (unless a newer record
+      * for the same key arrived meanwhile) and retried with the next batch. Unexpected runtime failures are
+      * handled the same way, so they do not end the writer thread.
+      */
+     public synchronized void flush() {
+         LinkedHashMap<Object, Pending> batch;
+         int batchMutations;
+         synchronized (lock) {
+             if (pending.isEmpty()) return;
+             batch = pending;
+             batchMutations = pendingMutations;
+             pending = new LinkedHashMap<>();
+             pendingMutations = 0;
+         }
+         try {
+             long batchTicket = 0;
+             for (Pending item : batch.values()) {
+                 log.write(item.record);
+                 batchTicket = item.ticket; // Tickets are in increasing order.
+                 if (durability == Durability.PER_RECORD) {
+                     log.sync(); // One fsync per record.
+                     commitThrough(item.ticket);
+                 }
+             }
+             if (durability == Durability.BATCHED) {
+                 log.sync(); // One fsync for the whole group.
+             } else {
+                 log.flush();
+             }
+             commitThrough(batchTicket);
+             maybeCompact();
+         } catch (IOException | RuntimeException e) {
+             e.printStackTrace();
+             synchronized (lock) {
+                 // The failed records are older than anything submitted since, so they go first.
+                 LinkedHashMap<Object, Pending> retry = new LinkedHashMap<>();
+                 for (Map.Entry<Object, Pending> failed : batch.entrySet()) {
+                     if (!pending.containsKey(failed.getKey())) retry.put(failed.getKey(), failed.getValue());
+                 }
+                 retry.putAll(pending);
+                 pending = retry;
+                 pendingMutations += batchMutations;
+             }
+             onError.accept(asIOException(e));
+         }
+     }
+
+     /**
+      * Wraps a runtime failure so it can be reported through the same callback as an I/O failure.
+      */
+     private static IOException asIOException(Exception e) {
+         return e instanceof IOException ? (IOException) e : new IOException(e);
+     }
+
+     /**
+      * Marks every ticket up to and including the given one as committed and wakes its waiters.
+      */
+     private void commitThrough(long ticket) {
+         synchronized (lock) {
+             if (ticket > committedTicket) {
+                 committedTicket = ticket;
+                 lock.notifyAll();
+             }
+         }
+     }
+
+     /**
+      * Starts a background compaction when the log has grown past its threshold.
+      * The log is sealed (renamed) and a fresh one is opened; reading and rewriting the snapshot happens
+      * on the compactor's thread.
+      * @throws IOException If the log cannot be sealed or reopened.
+      */
+     private void maybeCompact() throws IOException {
+         if (!compactor.shouldCompact(log, liveEntries) || compactor.isBusy()) return;
+         log.sealTo(sealedLogFile);
+         compactor.compactInBackground();
+     }
+
+     /**
+      * Stops the writer thread, writes everything still pending and closes the log.
+      */
+     public void close() {
+         synchronized (lock) {
+             running = false;
+             lock.notifyAll();
+         }
+         try {
+             if (writer != null) writer.join(5_000);
+         } catch (InterruptedException e) {
+             Thread.currentThread().interrupt();
+         }
+         flush();
+         synchronized (this) {
+             try {
+                 log.close();
+             } catch (IOException e) {
+                 e.printStackTrace();
+             }
+         }
+     }
+ }
+
+ /**
+  * An InputStream wrapper that counts the bytes handed out to its reader.
+  * Used by ScoreLog to know where the last complete record ends.
+  */
+ static class CountingInputStream extends FilterInputStream {
+     private long count; // Number of bytes read so far.
+
+     public CountingInputStream(InputStream in) {
+         super(in);
+     }
+
+     @Override
+     public int read() throws IOException {
+         int b = super.read();
+         if (b != -1) count++;
+         return b;
+     }
+
+     @Override
+     public int read(byte[] b, int off, int len) throws IOException {
+         int n = super.read(b, off, len);
+         if (n > 0) count += n;
+         return n;
+     }
+
+     @Override
+     public long skip(long n) throws IOException {
+         long skipped = super.skip(n);
+         count += skipped;
+         return skipped;
+     }
+
+     public long getCount() {
+         return count;
+     }
+ }
+
+ /**
+  * A storage engine for score entries: point lookups, writes, deletes and scans by game or player,
+  * independent of how the entries are laid out on disk. The engine is chosen at launch with "leaderboard.store":
+  *   "sharded" (default) - not a ScoreStore: the write-behind mutation log over per-game shards in "scores.d",
+  *                         with lazy loading and background compaction (see loadScores);
+  *   "text"   - TextFileStore: the legacy single "scores.txt", rewritten as a whole after every change;
+  *   "log"    - AppendLogStore: every change appended to "scores.log" right away, folded into the shards of
+  *              "scores.d" by snapshot() (the same files as the default engine, written synchronously);
+  *   "binary" - MappedBinaryStore: a memory-mapped "scores.dat" whose records are updated in place;
+  *   "memory" - InMemoryStore: nothing is persisted.
+  * Entries are keyed by player and game name, like scoreMap. A store is used by one thread at a time; the
+  * application calls sync() after each user action and close() once when it exits.
+  */
+ interface ScoreStore extends Closeable {
+     String DEFAULT_BACKEND = "sharded"; // The engine used when "leaderboard.store" is not set.
+     String BACKEND = System.getProperty("leaderboard.store", DEFAULT_BACKEND); // The engine selected at launch.
+
+     /**
+      * A mutation applied to a store.
+      */
+     interface Change {
+         void apply(ScoreStore store) throws IOException;
+     }
+
+     /**
+      * Opens a store.
+      * @param backend "text", "log", "binary" or "memory" (case-insensitive).
+      * @param folder The folder holding the store's files.
+      * @return The opened store, with its existing entries.
+      * @throws IOException If the backend is unknown or its files cannot be read.
+      */
+     static ScoreStore open(String backend, File folder) throws IOException {
+         switch (backend.toLowerCase(Locale.ROOT)) {
+             case "text":
+                 return new TextFileStore(new File(folder, SCORES_FILE_NAME));
+             case "log":
+                 return new AppendLogStore(new ShardedSnapshot(new File(folder, SHARD_DIRECTORY_NAME), SNAPSHOT_FORMAT, COMPRESS_SNAPSHOTS),
+                         new File(folder, SCORE_LOG_FILE_NAME), new File(folder, SEALED_LOG_FILE_NAME));
+             case "binary":
+                 return new MappedBinaryStore(new File(folder, BINARY_SCORES_FILE_NAME));
+             case "memory":
+                 return new InMemoryStore();
+             default:
+                 throw new IOException("Unknown storage engine '" + backend + "' (expected text, log, binary or memory)");
+         }
+     }
+
+     /**
+      * @param playerName The player's name.
+      * @param gameName The game's name.
+      * @return The player's entry for the game, or null if there is none.
+      * @throws IOException If the store cannot be read.
+      */
+     ScoreEntry get(String playerName, String gameName) throws IOException;
+
+     /**
+      * Adds an entry or replaces the entry of the same player and game.
+      * @param entry The new entry.
+      * @throws IOException If the change cannot be written.
+      */
+     void put(ScoreEntry entry) throws IOException;
+
+     /**
+      * Removes a player's entry for a game.
+      * @param playerName The player's name.
+      * @param gameName The game's name.
+      * @return True if there was an entry to remove.
+      * @throws IOException If the change cannot be written.
+      */
+     boolean delete(String playerName, String gameName) throws IOException;
+
+     /**
+      * @param gameName The game's name.
+      * @return Every entry of the game, in no particular order.
+      * @throws IOException If the store cannot be read.
+      */
+     List<ScoreEntry> scanByGame(String gameName) throws IOException;
+
+     /**
+      * @param playerName The player's name.
+      * @return Every entry of the player, in no particular order.
+      * @throws IOException If the store cannot be read.
+      */
+     List<ScoreEntry> scanByPlayer(String playerName) throws IOException;
+
+     /**
+      * Visits every entry once, in no particular order.
+      * @param onEntry Called with each entry.
+      * @throws IOException If the store cannot be read.
+      */
+     void scanAll(Consumer<ScoreEntry> onEntry) throws IOException;
+
+     /**
+      * Writes the store's complete, compact on-disk form, so reopening it reads no pending changes.
+      * @throws IOException If writing fails.
+      */
+     void snapshot() throws IOException;
+
+     /**
+      * Makes every change so far survive a crash. Stores that write each change as it is made need nothing more.
+      * @throws IOException If writing fails.
+      */
+     default void sync() throws IOException {
+     }
+ }
+
+ /**
+  * Base class of the stores that keep every entry in a HashMap keyed by getCompositeKey().
+  * Subclasses decide what, if anything, reaches the disk.
+  */
+ abstract static class MapScoreStore implements ScoreStore {
+     final HashMap<Long, ScoreEntry> entries = new HashMap<>(); // Composite key -> entry.
+
+     @Override
+     public ScoreEntry get(String playerName, String gameName) {
+         return entries.get(getCompositeKey(playerName, gameName));
+     }
+
+     @Override
+     public void put(ScoreEntry entry) throws IOException {
+         entries.put(entry.getKey(), entry);
+     }
+
+     @Override
+     public boolean delete(String playerName, String gameName) throws IOException {
+         return entries.remove(getCompositeKey(playerName, gameName)) != null;
+     }
+
+     @Override
+     public List<ScoreEntry> scanByGame(String gameName) {
+         return entries.values().stream().filter(entry -> entry.getGameName().equals(gameName)).collect(Collectors.toList());
+     }
+
+     @Override
+     public List<ScoreEntry> scanByPlayer(String playerName) {
+         return entries.values().stream().filter(entry -> entry.getName().equals(playerName)).collect(Collectors.toList());
+     }
+
+     @Override
+     public void scanAll(Consumer<ScoreEntry> onEntry) {
+         entries.values().forEach(onEntry);
+     }
+
+     @Override
+     public void snapshot() throws IOException {
+     }
+
+     @Override
+     public void close() throws IOException {
+     }
+ }
+
+ /**
+  * A store that keeps nothing on disk ("leaderboard.store=memory"); every session starts empty.
+  * Useful as the baseline in benchmarks and for trying the application out.
+  */
+ static class InMemoryStore extends MapScoreStore {
+ }
+
+ /**
+  * The legacy storage: one text file ("scores.txt") read in full on open and rewritten in full by snapshot().
+  * sync() snapshots, so the file is rewritten after every user action, as saveScores() did; close() does too.
+  */
+ static class TextFileStore extends MapScoreStore {
+     private final File file; // The text snapshot.
+     private boolean dirty;   // True if entries changed since the file was read or written.
+
+     /**
+      * Constructor for TextFileStore.
+      * @param file The text snapshot; it does not need to exist yet.
+      * @throws IOException If the file exists but cannot be read.
+      */
+     public TextFileStore(File file) throws IOException {
+         this.file = file;
+         ScoreSnapshot.read(file, entries);
+     }
+
+     @Override
+     public void put(ScoreEntry entry) throws IOException {
+         super.put(entry);
+         dirty = true;
+     }
+
+     @Override
+     public boolean delete(String playerName, String gameName) throws IOException {
+         boolean removed = super.delete(playerName, gameName);
+         dirty |= removed;
+         return removed;
+     }
+
+     @Override
+     public void snapshot() throws IOException {
+         if (!dirty) return;
+         ScoreSnapshot.writeText(file, entries.values());
+         dirty = false;
+     }
+
+     @Override
+     public void sync() throws IOException {
+         snapshot();
+     }
+
+     @Override
+     public void close() throws IOException {
+         snapshot();
+     }
+ }
+
+ /**
+  * Every change is appended to the mutation log ("scores.log") and handed to the OS before put() or delete()
+  * returns; snapshot() seals the log and folds it into the per-game shards, as the default engine's
+  * background compaction does. Reads come from memory.
+  */
+ static class AppendLogStore extends MapScoreStore {
+     private final ShardedSnapshot snapshot; // The shards the log is folded into.
+     private final ScoreLog log;             // The active log.
+     private final File sealedLogFile;       // Where the log is moved while it is folded in.
+
+     /**
+      * Constructor for AppendLogStore. Reads the shards, replays any sealed segment and the log, and opens the log.
+      * @param snapshot The sharded snapshot.
+      * @param logFile The active mutation log.
+      * @param sealedLogFile The sealed segment file.
+      * @throws IOException If a file cannot be read or the log cannot be opened.
+      */
+     public AppendLogStore(ShardedSnapshot snapshot, File logFile, File sealedLogFile) throws IOException {
+         this.snapshot = snapshot;
+         this.log = new ScoreLog(logFile);
+         this.sealedLogFile = sealedLogFile;
+         snapshot.load(entries, gameName -> true);
+         Consumer<ScoreEntry> onPut = entry -> entries.put(entry.getKey(), entry);
+         BiConsumer<String, String> onDelete = (name, gameName) -> entries.remove(getCompositeKey(name, gameName));
+         Consumer<String> onDropGame = gameName -> entries.values().removeIf(entry -> entry.getGameName().equals(gameName));
+         if (sealedLogFile.exists()) {
+             new ScoreLog(sealedLogFile).replay(onPut, onDelete, onDropGame);
+         }
+         log.replay(onPut, onDelete, onDropGame);
+         log.open();
+     }
+
+     @Override
+     public void put(ScoreEntry entry) throws IOException {
+         super.put(entry);
+         log.write(LogRecord.put(entry));
+         log.flush();
+     }
+
+     @Override
+     public boolean delete(String playerName, String gameName) throws IOException {
+         if (!super.delete(playerName, gameName)) return false;
+         log.write(LogRecord.delete(playerName, gameName));
+         log.flush();
+         return true;
+     }
+
+     @Override
+     public void snapshot() throws IOException {
+         if (sealedLogFile.exists()) {
+             // Left behind by an interrupted compaction; it is older than the active log.
+             snapshot.applySegment(sealedLogFile);
+             Files.delete(sealedLogFile.toPath());
+         }
+         if (log.getRecordCount() == 0) return;
+         log.flush();
+         log.sealTo(sealedLogFile);
+         snapshot.applySegment(sealedLogFile);
+         Files.delete(sealedLogFile.toPath());
+     }
+
+     @Override
+     public void close() throws IOException {
+         log.close(); // Every change is already in the log.
+     }
+ }
+
+ /**
+  * A binary score file ("scores.dat", see BinaryScoreFile) mapped into memory and read in place:
+  * only a slot table (composite key -> record offset) is built on open, and entries are decoded from
+  * the mapping when they are asked for. A put that changes an existing entry writes its score and date
+  * straight into the mapped record. New and deleted entries are held in a small overlay until snapshot()
+  * rewrites the file; sync() and close() snapshot.
+  */
+ static class MappedBinaryStore implements ScoreStore {
+     private final File file;                // The binary score file.
+     private MappedByteBuffer records;       // The mapped file.
+     private int[] playerSymbols;            // The file's player dictionary, as ids in ScoreEntry.PLAYER_NAMES.
+     private int[] gameSymbols;              // The file's game dictionary, as ids in ScoreEntry.GAME_NAMES.
+     private final HashMap<String, Integer> gameIds = new HashMap<>(); // Game name -> id in the file.
+     private final HashMap<String, Integer> playerIds = new HashMap<>(); // Player name -> id in the file.
+     private final HashMap<Long, Integer> slots = new HashMap<>(); // Composite key -> offset of its record in the file.
+     // Changes the file cannot hold in place: composite key -> new entry, or null for a deleted record.
+     private final HashMap<Long, ScoreEntry> overlay = new HashMap<>();
+
+     /**
+      * Constructor for MappedBinaryStore.
+      * @param file The binary score file; an empty one is created if it does not exist.
+      * @throws IOException If the file cannot be created, read or mapped, or is not a binary score file.
+      */
+     public MappedBinaryStore(File file) throws IOException {
+         this.file = file;
+         if (!file.exists()) BinaryScoreFile.write(file, Collections.emptyList());
+         map();
+     }
+
+     /**
+      * Maps the file and builds the dictionaries and the slot table.
+      */
+     private void map() throws IOException {
+         if (file.length() > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+         try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+             records = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+         }
+         long recordsStart;
+         int recordCount;
+         try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+              DataInputStream in = new DataInputStream(counter)) {
+             if (in.readInt() != BinaryScoreFile.MAGIC) throw new IOException(file + " is not a binary score file");
+             if (in.readShort() != BinaryScoreFile.VERSION || in.readShort() != BinaryScoreFile.RECORD_SIZE) {
+                 throw new IOException("Unsupported binary score file " + file);
+             }
+             playerSymbols = new int[in.readInt()];
+             gameSymbols = new int[in.readInt()];
+             recordCount = in.readInt();
+             playerIds.clear();
+             gameIds.clear();
+             for (int i = 0; i < playerSymbols.length; i++) {
+                 String name = in.readUTF();
+                 playerSymbols[i] = ScoreEntry.PLAYER_NAMES.idOf(name);
+                 playerIds.put(name, i);
+             }
+             for (int i = 0; i < gameSymbols.length; i++) {
+                 String name = in.readUTF();
+                 gameSymbols[i] = ScoreEntry.GAME_NAMES.idOf(name);
+                 gameIds.put(name, i);
+             }
+             recordsStart = counter.getCount();
+         }
+         slots.clear();
+         for (int i = 0; i < recordCount; i++) {
+             int offset = (int) (recordsStart + (long) i * BinaryScoreFile.RECORD_SIZE);
+             int nameId = records.getInt(offset);
+             int gameId = records.getInt(offset + 4);
+             if (nameId < 0 || nameId >= playerSymbols.length || gameId < 0 || gameId >= gameSymbols.length) {
+                 throw new IOException("Corrupt record in " + file + ": name/game id out of range");
+             }
+             slots.put(ScoreEntry.key(playerSymbols[nameId], gameSymbols[gameId]), offset); // Later records win, as when loading.
+         }
+     }
+
+     /**
+      * Decodes the record at an offset of the mapping.
+      */
+     private ScoreEntry decode(int offset) {
+         return new ScoreEntry(playerSymbols[records.getInt(offset)], Math.max(0, records.getInt(offset + 8)),
+                 records.getInt(offset + 12), gameSymbols[records.getInt(offset + 4)]);
+     }
+
+     @Override
+     public ScoreEntry get(String playerName, String gameName) {
+         long key = getCompositeKey(playerName, gameName);
+         if (overlay.containsKey(key)) return overlay.get(key);
+         Integer offset = slots.get(key);
+         return offset == null ? null : decode(offset);
+     }
+
+     @Override
+     public void put(ScoreEntry entry) {
+         long key = entry.getKey();
+         Integer offset = slots.get(key);
+         if (offset == null) {
+             overlay.put(key, entry); // A new entry: the file has no slot for it yet.
+             return;
+         }
+         records.putInt(offset + 8, entry.getScore());
+         records.putInt(offset + 12, entry.getEpochDay());
+         overlay.remove(key); // Undoes an earlier delete of the same entry.
+     }
+
+     @Override
+     public boolean delete(String playerName, String gameName) {
+         long key = getCompositeKey(playerName, gameName);
+         if (overlay.containsKey(key)) {
+             if (overlay.get(key) == null) return false; // Already deleted.
+             if (slots.containsKey(key)) {
+                 overlay.put(key, null);
+             } else {
+                 overlay.remove(key);
+             }
+             return true;
+         }
+         if (!slots.containsKey(key)) return false;
+         overlay.put(key, null);
+         return true;
+     }
+
+     @Override
+     public List<ScoreEntry> scanByGame(String gameName) {
+         Integer gameId = gameIds.get(gameName);
+         return scan(entry -> entry.getGameName().equals(gameName), offset -> gameId != null && records.getInt(offset + 4) == gameId);
+     }
+
+     @Override
+     public List<ScoreEntry> scanByPlayer(String playerName) {
+         Integer playerId = playerIds.get(playerName);
+         return scan(entry -> entry.getName().equals(playerName), offset -> playerId != null && records.getInt(offset) == playerId);
+     }
+
+     @Override
+     public void scanAll(Consumer<ScoreEntry> onEntry) {
+         scan(entry -> true, offset -> true).forEach(onEntry);
+     }
+
+     /**
+      * Collects the live entries that pass a filter. Records in the file are tested on their ids first,
+      * so only matching records are decoded.
+      */
+     private List<ScoreEntry> scan(Predicate<ScoreEntry> condition, Predicate<Integer> recordCondition) {
+         ArrayList<ScoreEntry> matches = new ArrayList<>();
+         for (Map.Entry<Long, Integer> slot : slots.entrySet()) {
+             if (recordCondition.test(slot.getValue()) && !overlay.containsKey(slot.getKey())) matches.add(decode(slot.getValue()));
+         }
+         for (ScoreEntry entry : overlay.values()) {
+             if (entry != null && condition.test(entry)) matches.add(entry);
+         }
+         return matches;
+     }
+
+     @Override
+     public void snapshot() throws IOException {
+         if (overlay.isEmpty()) {
+             records.force(); // Only in-place changes: write back the dirty pages.
+             return;
+         }
+         ArrayList<ScoreEntry> all = new ArrayList<>();
+         scanAll(all::add);
+         // Drop the mapping before the file is replaced under it. Java cannot unmap it directly, so the
+         // replace can still fail (on Windows) until the old buffer is collected; the store then keeps
+         // the old file and its overlay, and the next snapshot tries again.
+         records = null;
+         try {
+             BinaryScoreFile.write(file, all);
+         } catch (IOException e) {
+             try {
+                 map();
+             } catch (IOException remap) {
+                 e.addSuppressed(remap);
+             }
+             throw e;
+         }
+         overlay.clear();
+         map();
+     }
+
+     @Override
+     public void sync() throws IOException {
+         snapshot();
+     }
+
+     @Override
+     public void close() throws IOException {
+         snapshot();
+     }
+ }
+
+ /**
+  * Writes leaderboard views to CSV or JSON files. Entries are taken one at a time from an ordered source
+  * (a leaderboard of a ScoreTable, or the packed copy of its rows that the application exports from a
+  * background thread) and written through a buffered stream, so no list of ScoreEntry objects is built.
+  */
+ static class ScoreExporter {
+     /**
+      * The supported file formats.
+      */
+     enum Format {
+         CSV(".csv"),   // A "name,score,date,game" header, then one line per score (RFC 4180 quoting where needed).
+         JSON(".json"); // An array of {"name", "score", "date", "game"} objects.
+
+         private final String extension; // Default file extension.
+
+         Format(String extension) {
+             this.extension = extension;
+         }
+
+         /**
+          * @return The default file extension (including the dot).
+          */
+         String getExtension() {
+             return extension;
+         }
+     }
+
+     /**
+      * Writes the entries of an ordered source that pass a filter, replacing the file atomically.
+      * @param ordered The entries, in the order they are written.
+      * @param filter Decides which entries are written.
+      * @param limit The most entries to write, or 0 for no limit.
+      * @param format The file format.
+      * @param file The file to write.
+      * @return The number of entries written.
+      * @throws IOException If writing fails.
+      */
+     public static long write(Iterable<ScoreEntry> ordered, Predicate<ScoreEntry> filter, long limit, Format format, File file) throws IOException {
+         File tempFile = new File(file.getPath() + ".tmp");
+         long rows = 0;
+         try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8), 1 << 16)) {
+             out.write(format == Format.CSV ? "name,score,date,game\n" : "[");
+             for (ScoreEntry entry : ordered) {
+                 if (limit > 0 && rows >= limit) break;
+                 if (!filter.test(entry)) continue;
+                 if (format == Format.CSV) {
+                     out.write(csvField(entry.getName()));
+                     out.write(',');
+                     out.write(Integer.toString(entry.getScore()));
+                     out.write(',');
+                     out.write(entry.getDate().toString());
+                     out.write(',');
+                     out.write(csvField(entry.getGameName()));
+                     out.write('\n');
+                 } else {
+                     out.write(rows == 0 ? "\n  {\"name\": " : ",\n  {\"name\": ");
+                     out.write(jsonString(entry.getName()));
+                     out.write(", \"score\": ");
+                     out.write(Integer.toString(entry.getScore()));
+                     out.write(", \"date\": \"");
+                     out.write(entry.getDate().toString());
+                     out.write("\", \"game\": ");
+                     out.write(jsonString(entry.getGameName()));
+                     out.write('}');
+                 }
+                 rows++;
+             }
+             if (format == Format.JSON) out.write(rows == 0 ? "]\n" : "\n]\n");
+         }
+         ScoreSnapshot.replaceAtomically(tempFile, file);
+         return rows;
+     }
+
+     /**
+      * Quotes a CSV field if it contains a comma, a quote or a line break.
+      */
+     static String csvField(String value) {
+         for (int i = 0; i < value.length(); i++) {
+             char c = value.charAt(i);
+             if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                 return '"' + value.replace("\"", "\"\"") + '"';
+             }
+         }
+         return value;
+     }
+
+     /**
+      * Encodes a string as a JSON string literal.
+      */
+     static String jsonString(String value) {
+         StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+         for (int i = 0; i < value.length(); i++) {
+             char c = value.charAt(i);
+             switch (c) {
+                 case '"': json.append("\\\""); break;
+                 case '\\': json.append("\\\\"); break;
+                 case '\n': json.append("\\n"); break;
+                 case '\r': json.append("\\r"); break;
+                 case '\t': json.append("\\t"); break;
+                 default:
+                     if (c < 0x20) {
+                         json.append(String.format("\\u%04x", (int) c));
+                     } else {
+                         json.append(c);
+                     }
+             }
          }
+         return json.append('"').toString();
      }
  }
 }
\ No newline at end of file
@@ -0,0 +1,943 @@
+package leaderboard_app_part4;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import leaderboard_app_part4.LeaderboardAppSwing.*;
+
+/**
+ * Command-line benchmarks for the persistence code. They use synthetic data in temporary files
+ * and never touch the application's own score files.
+ * Run with: java leaderboard_app_part4.ScoreBenchmarks <benchmark> [size]
+ *   startup [lines]  - time to load a text score file with the original BufferedReader/split parser
+ *                      versus the memory-mapped loader, sequential and parallel (default 10,000,000 lines).
+ *   commit [records] - commit latency and throughput of each durability mode with 8 concurrent
+ *                      submitters that each wait for their own commit (default 20,000 records).
+ *   columns [entries] - leaderboard sort, filter and aggregate over score objects versus the column
+ *                      table on and off the heap, and the retained heap of each (default 1,000,000 entries).
+ *   playerindex [entries] - player searches through the player index versus a scan of the table's rows,
+ *                      player deletion through the index versus a row scan, and what the index costs per
+ *                      insertion (default 1,000,000 entries).
+ *   ranking [entries] - a score change followed by a leaderboard view, re-sorted versus read from the
+ *                      per-game rankings (default 1,000,000 entries).
+ *   rank [entries]   - a player's rank and the entry at a rank in one game, counted over the game's rows
+ *                      versus looked up in its ranking (default 1,000,000 entries in the game).
+ *   topk [entries]   - a game's top 10 and top 100 by full sort, by bounded heap and from the game's
+ *                      ranking (default 1,000,000 entries in the game).
+ *   offheap [entries] - checks the off-heap columns against the heap columns and times both; prints whether
+ *                      they use foreign memory (JDK 22 and later) or direct buffers (default 1,000,000 entries).
+ */
+class ScoreBenchmarks {
+ private static final int ROUNDS = 3; // Timed runs per variant; the best one is reported.
+
+ public static void main(String[] args) throws IOException {
+     String benchmark = args.length > 0 ? args[0] : "startup";
+     switch (benchmark) {
+         case "startup":
+             startup(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+             break;
+         case "commit":
+             commit(args.length > 1 ? Integer.parseInt(args[1]) : 20_000);
+             break;
+         case "compression":
+             compression(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "stores":
+             stores(args.length > 1 ? Integer.parseInt(args[1]) : 200_000);
+             break;
+         case "export":
+             export(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "footprint":
+             footprint(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "scoremap":
+             scoreMap(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "columns":
+             columns(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "playerindex":
+             playerIndex(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "ranking":
+             ranking(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "rank":
+             rank(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "topk":
+             topK(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         case "offheap":
+             offHeap(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+             break;
+         default:
+             System.err.println("Unknown benchmark: " + benchmark);
+     }
+ }
+
+ /**
+  * Writes a synthetic text score file and times loading it into a map the way loadScores() does.
+  * @param lines Number of lines in the file.
+  * @throws IOException If the temporary file cannot be written or read.
+  */
+ static void startup(int lines) throws IOException {
+     File file = File.createTempFile("scores-bench", ".txt");
+     file.deleteOnExit();
+     writeSyntheticTextFile(file, lines);
+     System.out.printf("startup: %,d lines, %,d bytes%n", lines, file.length());
+
+     report("BufferedReader + split", lines, () -> {
+         LongScoreMap map = new LongScoreMap();
+         readWithBufferedReader(file, entry -> map.put(entry.getKey(), entry));
+         return map.size();
+     });
+     report("memory-mapped, 1 thread", lines, () -> {
+         LongScoreMap map = new LongScoreMap();
+         new MappedTextScoreLoader(1).load(file, map);
+         return map.size();
+     });
+     int parallelism = ForkJoinPool.getCommonPoolParallelism();
+     report("memory-mapped, " + parallelism + " workers", lines, () -> {
+         LongScoreMap map = new LongScoreMap();
+         new MappedTextScoreLoader(parallelism).load(file, map);
+         return map.size();
+     });
+     Files.deleteIfExists(file.toPath());
+ }
+
+ /**
+  * Writes the same entries as plain text, compressed text, binary and compressed binary snapshots,
+  * then compares the file sizes and the time it takes to load each one the way the application does.
+  * @param lines Number of lines in the synthetic source file.
+  * @throws IOException If a temporary file cannot be written or read.
+  */
+ static void compression(int lines) throws IOException {
+     File source = File.createTempFile("scores-bench", ".txt");
+     writeSyntheticTextFile(source, lines);
+     LinkedHashMap<Long, ScoreEntry> entries = new LinkedHashMap<>();
+     ScoreSnapshot.read(source, entries);
+     System.out.printf("compression: %,d lines, %,d distinct entries%n", lines, entries.size());
+
+     for (SnapshotFormat format : SnapshotFormat.values()) {
+         for (boolean compress : new boolean[] {false, true}) {
+             File file = File.createTempFile("scores-bench", format.getExtension() + (compress ? CompressedSnapshot.EXTENSION : ""));
+             long start = System.nanoTime();
+             if (compress) {
+                 CompressedSnapshot.write(file, format, entries.values());
+             } else {
+                 format.write(file, entries.values());
+             }
+             long writeNanos = System.nanoTime() - start;
+             String label = format + (compress ? " + deflate" : "");
+             System.out.printf("  %-28s %,14d bytes  write %,8.1f ms%n", label, file.length(), writeNanos / 1e6);
+             report("load " + label, entries.size(), () -> {
+                 LongScoreMap map = new LongScoreMap();
+                 ScoreSnapshot.read(file, map);
+                 return map.size();
+             });
+             Files.deleteIfExists(file.toPath());
+         }
+     }
+     Files.deleteIfExists(source.toPath());
+ }
+
+ /**
+  * Runs the same workload against every ScoreStore engine, each in its own temporary folder:
+  * writing every entry and snapshotting, reopening, point lookups, and scans by game and by player.
+  * @param lines Number of lines in the synthetic source file.
+  * @throws IOException If a temporary file cannot be written or read.
+  */
+ static void stores(int lines) throws IOException {
+     File source = File.createTempFile("scores-bench", ".txt");
+     writeSyntheticTextFile(source, lines);
+     LinkedHashMap<Long, ScoreEntry> sourceEntries = new LinkedHashMap<>();
+     ScoreSnapshot.read(source, sourceEntries);
+     Files.deleteIfExists(source.toPath());
+     ArrayList<ScoreEntry> entries = new ArrayList<>(sourceEntries.values());
+     int lookups = Math.min(entries.size(), 100_000);
+     System.out.printf("stores: %,d entries, %,d lookups%n", entries.size(), lookups);
+
+     for (String backend : new String[] {"memory", "text", "log", "binary"}) {
+         File folder = Files.createTempDirectory("scores-bench").toFile();
+         // Round 1 adds every entry; later rounds update them all.
+         ScoreStore[] store = {ScoreStore.open(backend, folder)};
+         report(backend + ": put all + snapshot", entries.size(), () -> {
+             for (ScoreEntry entry : entries) store[0].put(entry);
+             store[0].snapshot();
+             return entries.size();
+         });
+         report(backend + ": get", lookups, () -> {
+             long found = 0;
+             for (int i = 0; i < lookups; i++) {
+                 ScoreEntry entry = entries.get(i);
+                 if (store[0].get(entry.getName(), entry.getGameName()) != null) found++;
+             }
+             return found;
+         });
+         report(backend + ": scan by game", entries.size(), () -> store[0].scanByGame(entries.get(0).getGameName()).size());
+         report(backend + ": scan by player", entries.size(), () -> store[0].scanByPlayer(entries.get(0).getName()).size());
+         store[0].close();
+         report(backend + ": reopen + scan all", entries.size(), () -> {
+             long[] count = {0};
+             try (ScoreStore reopened = ScoreStore.open(backend, folder)) {
+                 reopened.scanAll(entry -> count[0]++);
+             }
+             return count[0];
+         });
+         deleteRecursively(folder);
+     }
+ }
+
+ /**
+  * Deletes a benchmark's temporary folder and everything in it.
+  */
+ private static void deleteRecursively(File file) throws IOException {
+     File[] children = file.listFiles();
+     if (children != null) {
+         for (File child : children) deleteRecursively(child);
+     }
+     Files.deleteIfExists(file.toPath());
+ }
+
+ /**
+  * Exports a ScoreTable's leaderboard to CSV and JSON, in full and as a one-game view, reading each from
+  * its ranking. Also times the part of an application export that runs on the event dispatch thread:
+  * copying the rows for the background writer.
+  * @param lines Number of lines in the synthetic source file.
+  * @throws IOException If a temporary file cannot be written or read.
+  */
+ static void export(int lines) throws IOException {
+     File source = File.createTempFile("scores-bench", ".txt");
+     writeSyntheticTextFile(source, lines);
+     ScoreTable table = new ScoreTable();
+     ScoreSnapshot.read(source, table);
+     Files.deleteIfExists(source.toPath());
+     System.out.printf("export: %,d entries%n", table.size());
+     report("copy rows (all games)", table.size(), () -> table.copyRows(table.leaderboardRows(), 0).size());
+
+     int gameId = table.leaderboard().iterator().next().getGameId();
+     for (ScoreExporter.Format format : ScoreExporter.Format.values()) {
+         File file = File.createTempFile("scores-bench", format.getExtension());
+         report(format + ": one game", table.size(), () -> ScoreExporter.write(table.leaderboard(gameId), entry -> true, 0, format, file));
+         report(format + ": all games", table.size(), () -> ScoreExporter.write(table.leaderboard(), entry -> true, 0, format, file));
+         System.out.printf("  %-28s %,14d bytes%n", format + " file (all games)", file.length());
+         Files.deleteIfExists(file.toPath());
+     }
+ }
+
+ /**
+  * Measures the retained heap of a loaded score map: the current layout (entries holding name ids,
+  * keyed by packed long keys) against the earlier one (entries holding name Strings, keyed by
+  * "name::GAME::game" Strings, with each distinct name stored once as the old loader did).
+  * Run with a fixed heap (e.g. -Xms2g -Xmx2g) so the numbers are not disturbed by heap resizing.
+  * @param lines Number of lines in the synthetic source file.
+  * @throws IOException If a temporary file cannot be written or read.
+  */
+ static void footprint(int lines) throws IOException {
+     File source = File.createTempFile("scores-bench", ".txt");
+     writeSyntheticTextFile(source, lines);
+     long before = usedHeap();
+     HashMap<Long, ScoreEntry> current = new HashMap<>();
+     new MappedTextScoreLoader(1).load(source, current);
+     Files.deleteIfExists(source.toPath());
+     long withCurrent = usedHeap();
+
+     // Rebuilt from the loaded entries, with its own copy of every name, while the current map stays alive.
+     HashMap<String, LegacyEntry> legacy = new HashMap<>();
+     HashMap<String, String> canonicalNames = new HashMap<>();
+     HashMap<Integer, LocalDate> dates = new HashMap<>(); // The old loader shared one LocalDate per distinct day.
+     for (ScoreEntry entry : current.values()) {
+         String name = canonicalNames.computeIfAbsent(entry.getName(), String::new);
+         String gameName = canonicalNames.computeIfAbsent(entry.getGameName(), String::new);
+         LocalDate date = dates.computeIfAbsent(entry.getEpochDay(), LocalDate::ofEpochDay);
+         legacy.put(name + "::GAME::" + gameName, new LegacyEntry(name, entry.getScore(), date, gameName));
+     }
+     canonicalNames = null; // The old loader dropped its canonical map after loading, too.
+     dates = null;
+     long withBoth = usedHeap();
+
+     int entries = current.size();
+     long currentBytes = withCurrent - before;
+     long legacyBytes = withBoth - withCurrent;
+     System.out.printf("footprint: %,d entries, %,d players, %,d games%n",
+             entries, ScoreEntry.PLAYER_NAMES.size(), ScoreEntry.GAME_NAMES.size());
+     System.out.printf("  %-28s %,14d bytes  %,7.1f bytes/entry%n", "String names and keys", legacyBytes, legacyBytes / (double) entries);
+     System.out.printf("  %-28s %,14d bytes  %,7.1f bytes/entry%n", "name ids and long keys", currentBytes, currentBytes / (double) entries);
+     System.out.printf("  (maps still hold %,d and %,d entries)%n", current.size(), legacy.size()); // Keeps both reachable.
+ }
+
+ /**
+  * Compares the score map implementations on the operations the application performs per mutation:
+  * a lookup of a random existing key, an update (put over an existing key) and a remove followed by a
+  * re-insert. "String keys" rebuilds the earlier "name::GAME::game" key for every operation, as the
+  * listeners used to; the other two use the packed long key. Also reports each full map's retained heap.
+  * @param entries Number of entries in each map.
+  * @throws IOException Never; declared for report().
+  */
+ static void scoreMap(int entries) throws IOException {
+     int games = 50;
+     ScoreEntry[] pool = new ScoreEntry[entries];
+     for (int i = 0; i < entries; i++) {
+         pool[i] = new ScoreEntry("Player" + (i / games), i, 0, "Game" + (i % games));
+     }
+     int[] order = new int[entries]; // A fixed random access order, the same for every map.
+     Random random = new Random(42);
+     for (int i = 0; i < entries; i++) {
+         int j = random.nextInt(i + 1);
+         order[i] = order[j];
+         order[j] = i;
+     }
+     System.out.printf("scoremap: %,d entries, %,d operations per run%n", entries, entries);
+
+     long before = usedHeap();
+     HashMap<String, ScoreEntry> stringKeys = new HashMap<>();
+     for (ScoreEntry entry : pool) stringKeys.put(entry.getName() + "::GAME::" + entry.getGameName(), entry);
+     long withStringKeys = usedHeap();
+     HashMap<Long, ScoreEntry> boxedKeys = new HashMap<>();
+     for (ScoreEntry entry : pool) boxedKeys.put(entry.getKey(), entry);
+     long withBoxedKeys = usedHeap();
+     LongScoreMap longKeys = new LongScoreMap();
+     for (ScoreEntry entry : pool) longKeys.put(entry.getKey(), entry);
+     long withLongKeys = usedHeap();
+
+     report("String keys: get", entries, () -> {
+         long sum = 0;
+         for (int i : order) sum += stringKeys.get(pool[i].getName() + "::GAME::" + pool[i].getGameName()).score;
+         return sum;
+     });
+     report("HashMap<Long>: get", entries, () -> {
+         long sum = 0;
+         for (int i : order) sum += boxedKeys.get(pool[i].getKey()).score;
+         return sum;
+     });
+     report("LongScoreMap: get", entries, () -> {
+         long sum = 0;
+         for (int i : order) sum += longKeys.get(pool[i].getKey()).score;
+         return sum;
+     });
+     report("String keys: put", entries, () -> {
+         for (int i : order) stringKeys.put(pool[i].getName() + "::GAME::" + pool[i].getGameName(), pool[i]);
+         return stringKeys.size();
+     });
+     report("HashMap<Long>: put", entries, () -> {
+         for (int i : order) boxedKeys.put(pool[i].getKey(), pool[i]);
+         return boxedKeys.size();
+     });
+     report("LongScoreMap: put", entries, () -> {
+         for (int i : order) longKeys.put(pool[i].getKey(), pool[i]);
+         return longKeys.size();
+     });
+     report("String keys: remove+put", entries, () -> {
+         for (int i : order) {
+             String key = pool[i].getName() + "::GAME::" + pool[i].getGameName();
+             stringKeys.remove(key);
+             stringKeys.put(key, pool[i]);
+         }
+         return stringKeys.size();
+     });
+     report("HashMap<Long>: remove+put", entries, () -> {
+         for (int i : order) {
+             boxedKeys.remove(pool[i].getKey());
+             boxedKeys.put(pool[i].getKey(), pool[i]);
+         }
+         return boxedKeys.size();
+     });
+     report("LongScoreMap: remove+put", entries, () -> {
+         for (int i : order) {
+             longKeys.remove(pool[i].getKey());
+             longKeys.put(pool[i].getKey(), pool[i]);
+         }
+         return longKeys.size();
+     });
+     System.out.printf("  %-28s %,14d bytes (String keys)  %,d bytes (HashMap<Long>)  %,d bytes (LongScoreMap)%n", "retained heap",
+             withStringKeys - before, withBoxedKeys - withStringKeys, withLongKeys - withBoxedKeys);
+ }
+
+ /**
+  * Compares the object-per-entry layout (a LongScoreMap of ScoreEntry objects) with the column table, its
+  * columns on the heap and off it, on the leaderboard's read paths: sorting all entries, filtering one game
+  * and sorting it, and collecting the game names. The object variants copy the values into a list and sort
+  * it with compareTo(), as refreshLeaderboard() used to. Also reports the retained heap of each layout.
+  * @param entries Number of entries in each store.
+  * @throws IOException Never; declared for report().
+  */
+ static void columns(int entries) throws IOException {
+     int games = 50;
+     Random random = new Random(42);
+     System.out.printf("columns: %,d entries in %d games%n", entries, games);
+
+     long before = usedHeap();
+     LongScoreMap objects = new LongScoreMap();
+     for (int i = 0; i < entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + (i / games), random.nextInt(100_000), 18_000 + random.nextInt(2_000), "Game" + (i % games));
+         objects.put(entry.getKey(), entry);
+     }
+     long withObjects = usedHeap();
+     ScoreTable table = new ScoreTable();
+     table.putAll(objects);
+     long withTable = usedHeap();
+     ScoreTable offHeap = new ScoreTable(new OffHeapScoreColumns(16));
+     offHeap.putAll(objects);
+     long withOffHeap = usedHeap();
+     int gameId = ScoreEntry.GAME_NAMES.find("Game7");
+
+     report("objects: sort all", entries, () -> {
+         ArrayList<ScoreEntry> sorted = new ArrayList<>(objects.values());
+         sorted.sort(null);
+         return sorted.size();
+     });
+     report("columns: sort all", entries, () -> table.sortedRows(null).length);
+     report("off-heap columns: sort all", entries, () -> offHeap.sortedRows(null).length);
+     report("objects: filter game + sort", entries, () -> {
+         ArrayList<ScoreEntry> sorted = new ArrayList<>();
+         for (ScoreEntry entry : objects.values()) {
+             if (entry.getGameId() == gameId) sorted.add(entry);
+         }
+         sorted.sort(null);
+         return sorted.size();
+     });
+     report("columns: filter game + sort", entries, () -> table.sortedRows(row -> table.gameId(row) == gameId).length);
+     report("off-heap: filter game + sort", entries, () -> offHeap.sortedRows(row -> offHeap.gameId(row) == gameId).length);
+     report("objects: game names", entries, () -> {
+         HashSet<String> names = new HashSet<>();
+         for (ScoreEntry entry : objects.values()) names.add(entry.getGameName());
+         return names.size();
+     });
+     report("columns: game names (scan)", entries, () -> scanGameIds(table).cardinality());
+     report("off-heap: game names (scan)", entries, () -> scanGameIds(offHeap).cardinality());
+     report("per-game counts: game names", entries, () -> table.gameNames().size());
+     System.out.printf("  %-28s %,14d bytes (objects)  %,d bytes (columns)  %,d bytes (off-heap columns, %s)%n", "retained heap",
+             withObjects - before, withTable - withObjects, withOffHeap - withTable, OffHeapScoreColumns.memorySource());
+ }
+
+ /**
+  * Checks OffHeapScoreColumns against HeapScoreColumns and times both. The check fills a table of each kind from
+  * 16 rows one put at a time, so the columns are reallocated (and, with foreign memory, their old arenas closed)
+  * many times, then removes half of the entries and puts them back with new scores; the off-heap table must end
+  * with the same entries in the same leaderboard order. Which memory the off-heap columns use depends on the JDK: foreign memory where
+  * java.lang.foreign is final (22 and later), direct buffers before, so running this on both covers both paths.
+  * @param entries Number of entries.
+  * @throws IOException Never; declared for report().
+  */
+ static void offHeap(int entries) throws IOException {
+     System.out.printf("offheap: %,d entries, off-heap columns use %s%n", entries, OffHeapScoreColumns.memorySource());
+     LongScoreMap bulk = new LongScoreMap(entries);
+     Random random = new Random(42);
+     for (int i = 0; i < entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + (i / 50), random.nextInt(100_000), 18_000 + random.nextInt(2_000), "Game" + (i % 50));
+         bulk.put(entry.getKey(), entry);
+     }
+     ScoreTable heap = new ScoreTable(new HeapScoreColumns(16));
+     ScoreTable offHeap = new ScoreTable(new OffHeapScoreColumns(16));
+     for (ScoreTable table : new ScoreTable[] {heap, offHeap}) {
+         for (ScoreEntry entry : bulk.values()) table.put(entry.getKey(), entry);
+         int i = 0;
+         for (ScoreEntry entry : bulk.values()) {
+             if (i++ % 2 != 0) continue;
+             table.remove(entry.getKey());
+             ScoreEntry changed = new ScoreEntry(entry.getNameId(), entry.getScore() / 2, entry.getEpochDay(), entry.getGameId());
+             table.put(changed.getKey(), changed);
+         }
+     }
+     Iterator<ScoreEntry> expected = heap.leaderboard().iterator();
+     for (ScoreEntry entry : offHeap.leaderboard()) {
+         ScoreEntry other = expected.hasNext() ? expected.next() : null;
+         if (other == null || entry.getKey() != other.getKey() || entry.getScore() != other.getScore() || entry.getEpochDay() != other.getEpochDay()) {
+             throw new IllegalStateException("Off-heap columns disagree with heap columns at " + entry + " / " + other);
+         }
+     }
+     if (expected.hasNext()) throw new IllegalStateException("Off-heap columns lost entries");
+     System.out.println("  check passed: same entries in the same order");
+
+     report("heap columns: fill", entries, () -> {
+         ScoreTable table = new ScoreTable(new HeapScoreColumns(16));
+         table.putAll(bulk);
+         return table.size();
+     });
+     report("off-heap columns: fill", entries, () -> {
+         ScoreTable table = new ScoreTable(new OffHeapScoreColumns(16));
+         table.putAll(bulk);
+         return table.size();
+     });
+     report("heap columns: sort all", entries, () -> heap.sortedRows(null).length);
+     report("off-heap columns: sort all", entries, () -> offHeap.sortedRows(null).length);
+ }
+
+ /**
+  * Collects the game ids of a table's live rows with one pass over its game id column.
+  */
+ private static BitSet scanGameIds(ScoreTable table) {
+     BitSet seen = new BitSet();
+     for (int row = 0; row < table.rowLimit(); row++) {
+         if (table.isLive(row)) seen.set(table.gameId(row));
+     }
+     return seen;
+ }
+
+ /**
+  * Times searches by player name through ScoreTable's player index against the scan over every row the
+  * search button used to do, plus prefix scans, and the cost of inserting entries with the index kept
+  * current one entry at a time versus rebuilt once after a bulk load. Also times deleting a player's
+  * entries found through the index against a scan of every row, as player deletion used to do.
+  * @param entries Number of entries in the table.
+  * @throws IOException Never; declared for report().
+  */
+ static void playerIndex(int entries) throws IOException {
+     int games = 50;
+     int searches = 200; // Kept small: every scan reads the whole table.
+     LongScoreMap bulk = new LongScoreMap(entries);
+     for (int i = 0; i < entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + (i / games), i, 0, "Game" + (i % games));
+         bulk.put(entry.getKey(), entry);
+     }
+     Random random = new Random(42);
+     String[] queries = new String[searches];
+     for (int i = 0; i < searches; i++) queries[i] = ("player" + random.nextInt(entries / games));
+     System.out.printf("playerindex: %,d entries, %,d searches per run%n", bulk.size(), searches);
+
+     report("insert one by one", bulk.size(), () -> {
+         ScoreTable table = new ScoreTable();
+         for (ScoreEntry entry : bulk.values()) table.put(entry.getKey(), entry);
+         return table.playerIndex().size();
+     });
+     report("bulk load + index rebuild", bulk.size(), () -> {
+         ScoreTable table = new ScoreTable();
+         table.putAll(bulk);
+         return table.playerIndex().size();
+     });
+     ScoreTable table = new ScoreTable();
+     table.putAll(bulk);
+     table.playerIndex();
+     report("search: row scan", searches, () -> {
+         long found = 0;
+         for (String query : queries) {
+             BitSet matchingPlayers = new BitSet();
+             for (int id = 0; id < ScoreEntry.PLAYER_NAMES.size(); id++) {
+                 if (ScoreEntry.PLAYER_NAMES.nameOf(id).equalsIgnoreCase(query)) matchingPlayers.set(id);
+             }
+             for (int row = 0; row < table.rowLimit(); row++) {
+                 if (table.isLive(row) && matchingPlayers.get(table.playerId(row))) found++;
+             }
+         }
+         return found;
+     });
+     report("search: player index", searches, () -> {
+         long found = 0;
+         for (String query : queries) found += table.findAllByPlayer(query).size();
+         return found;
+     });
+     report("prefix scan: player index", searches, () -> {
+         long found = 0;
+         for (String query : queries) found += table.findByPlayerPrefix(query.substring(0, query.length() - 1)).size();
+         return found;
+     });
+     // Each deleted player's entries are put back, so every run deletes the same entries.
+     int[] playerIds = new int[searches];
+     for (int i = 0; i < searches; i++) playerIds[i] = ScoreEntry.PLAYER_NAMES.find("Player" + random.nextInt(entries / games));
+     report("delete player: row scan", searches, () -> {
+         long removed = 0;
+         for (int playerId : playerIds) {
+             List<ScoreEntry> deleted = table.removeRows(row -> table.playerId(row) == playerId);
+             for (ScoreEntry entry : deleted) table.put(entry.getKey(), entry);
+             removed += deleted.size();
+         }
+         return removed;
+     });
+     report("delete player: player index", searches, () -> {
+         long removed = 0;
+         for (int playerId : playerIds) {
+             List<ScoreEntry> deleted = table.removePlayer(playerId);
+             for (ScoreEntry entry : deleted) table.put(entry.getKey(), entry);
+             removed += deleted.size();
+         }
+         return removed;
+     });
+ }
+
+ /**
+  * Times what every submission costs the leaderboard: a score change followed by building the shown view,
+  * once by selecting and sorting the rows (as refreshLeaderboard() did before the rankings) and once by
+  * reading them from the game rankings the table keeps current. Covers a one-game view and "All Games".
+  * @param entries Number of entries in the table.
+  * @throws IOException Never; declared for report().
+  */
+ static void ranking(int entries) throws IOException {
+     int games = 50;
+     int changes = 20; // Kept small: every re-sorted view sorts the whole selection.
+     ScoreTable table = new ScoreTable();
+     LongScoreMap bulk = new LongScoreMap(entries);
+     Random random = new Random(42);
+     for (int i = 0; i < entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + (i / games), random.nextInt(100_000), 18_000, "Game" + (i % games));
+         bulk.put(entry.getKey(), entry);
+     }
+     table.putAll(bulk);
+     table.ranking(0); // Builds the rankings after the bulk load.
+     long[] keys = new long[changes];
+     for (int i = 0; i < changes; i++) keys[i] = ScoreEntry.key(ScoreEntry.PLAYER_NAMES.find("Player" + random.nextInt(entries / games)), ScoreEntry.GAME_NAMES.find("Game7"));
+     int gameId = ScoreEntry.GAME_NAMES.find("Game7");
+     System.out.printf("ranking: %,d entries in %d games, %d changes per run%n", table.size(), games, changes);
+
+     report("one game: re-sort", changes, () -> {
+         long shown = 0;
+         for (long key : keys) {
+             ScoreEntry entry = table.get(key);
+             entry.score = random.nextInt(100_000);
+             table.put(key, entry);
+             shown += table.sortedRows(row -> table.gameId(row) == gameId).length;
+         }
+         return shown;
+     });
+     report("one game: ranking", changes, () -> {
+         long shown = 0;
+         for (long key : keys) {
+             ScoreEntry entry = table.get(key);
+             entry.score = random.nextInt(100_000);
+             table.put(key, entry);
+             for (PrimitiveIterator.OfInt rows = table.leaderboardRows(gameId); rows.hasNext(); rows.nextInt()) shown++;
+         }
+         return shown;
+     });
+     report("all games: re-sort", changes, () -> {
+         long shown = 0;
+         for (long key : keys) {
+             ScoreEntry entry = table.get(key);
+             entry.score = random.nextInt(100_000);
+             table.put(key, entry);
+             shown += table.sortedRows(null).length;
+         }
+         return shown;
+     });
+     report("all games: ranking", changes, () -> {
+         long shown = 0;
+         for (long key : keys) {
+             ScoreEntry entry = table.get(key);
+             entry.score = random.nextInt(100_000);
+             table.put(key, entry);
+             for (PrimitiveIterator.OfInt rows = table.leaderboardRows(); rows.hasNext(); rows.nextInt()) shown++;
+         }
+         return shown;
+     });
+ }
+
+ /**
+  * Times rank lookups in a single game: a player's competition rank and the entry at a position, once by
+  * going over the game's rows (counting the better scores, or walking the leaderboard order to the position)
+  * and once through the game's ranking. Scores come from a small range, so many entries are tied.
+  * @param entries Number of entries in the game.
+  * @throws IOException Never; declared for report().
+  */
+ static void rank(int entries) throws IOException {
+     int lookups = 1_000;
+     int slowLookups = 20; // Kept small: every counted lookup reads all of the game's rows.
+     ScoreTable table = new ScoreTable();
+     LongScoreMap bulk = new LongScoreMap(entries);
+     Random random = new Random(42);
+     for (int i = 0; i < entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + i, random.nextInt(10_000), 18_000 + random.nextInt(30), "RankGame");
+         bulk.put(entry.getKey(), entry);
+     }
+     table.putAll(bulk);
+     int gameId = ScoreEntry.GAME_NAMES.find("RankGame");
+     RowTree ranking = table.ranking(gameId); // Builds the rankings after the bulk load.
+     long[] keys = new long[lookups];
+     int[] positions = new int[lookups];
+     for (int i = 0; i < lookups; i++) {
+         keys[i] = ScoreEntry.key(ScoreEntry.PLAYER_NAMES.find("Player" + random.nextInt(entries)), gameId);
+         positions[i] = random.nextInt(entries);
+     }
+     System.out.printf("rank: %,d entries in one game, %,d lookups per run (%d when counted)%n", ranking.size(), lookups, slowLookups);
+
+     report("rank of player: count", slowLookups, () -> {
+         long total = 0;
+         for (int i = 0; i < slowLookups; i++) {
+             int row = table.findRow(keys[i]);
+             int score = table.score(row);
+             int epochDay = table.epochDay(row);
+             int rank = 1;
+             for (PrimitiveIterator.OfInt rows = table.leaderboardRows(gameId); rows.hasNext(); ) {
+                 int other = rows.nextInt();
+                 if (table.score(other) > score || (table.score(other) == score && table.epochDay(other) > epochDay)) rank++;
+             }
+             total += rank;
+         }
+         return total;
+     });
+     report("rank of player: ranking", lookups, () -> {
+         long total = 0;
+         for (long key : keys) total += table.rankInGame(key);
+         return total;
+     });
+     report("entry at rank: walk", slowLookups, () -> {
+         long total = 0;
+         for (int i = 0; i < slowLookups; i++) {
+             PrimitiveIterator.OfInt rows = table.leaderboardRows(gameId);
+             for (int skip = 0; skip < positions[i]; skip++) rows.nextInt();
+             total += table.score(rows.nextInt());
+         }
+         return total;
+     });
+     report("entry at rank: ranking", lookups, () -> {
+         long total = 0;
+         for (int position : positions) total += table.entryAtPosition(gameId, position).getScore();
+         return total;
+     });
+ }
+
+ /**
+  * Times a game's top k entries three ways: selecting and sorting all of the game's rows, one pass keeping
+  * the best k in a bounded heap, and reading the front of the game's ranking (topK, as a Top N export does).
+  * A second game of the same size makes the selection test matter.
+  * @param entries Number of entries in the measured game.
+  * @throws IOException Never; declared for report().
+  */
+ static void topK(int entries) throws IOException {
+     ScoreTable table = new ScoreTable();
+     LongScoreMap bulk = new LongScoreMap(2 * entries);
+     Random random = new Random(42);
+     for (int i = 0; i < 2 * entries; i++) {
+         ScoreEntry entry = new ScoreEntry("Player" + (i / 2), random.nextInt(1_000_000), 18_000 + random.nextInt(30), i % 2 == 0 ? "TopGame" : "OtherGame");
+         bulk.put(entry.getKey(), entry);
+     }
+     table.putAll(bulk);
+     int gameId = ScoreEntry.GAME_NAMES.find("TopGame");
+     System.out.printf("topk: %,d entries in the game, %,d in the table%n", table.ranking(gameId).size(), table.size());
+
+     for (int k : new int[] {10, 100}) {
+         report("top " + k + ": full sort", 1, () -> {
+             int[] rows = table.sortedRows(row -> table.gameId(row) == gameId);
+             return table.score(rows[0]) + Math.min(k, rows.length);
+         });
+         report("top " + k + ": bounded heap", 1, () -> {
+             int[] rows = boundedHeapTopRows(table, row -> table.gameId(row) == gameId, k);
+             return table.score(rows[0]) + rows.length;
+         });
+         report("top " + k + ": ranking", 1, () -> {
+             ArrayList<ScoreEntry> top = table.topK(gameId, k);
+             return top.get(0).getScore() + top.size();
+         });
+     }
+ }
+
+ /**
+  * Selects the first k live rows of a table in leaderboard order among those that pass a test, the way an
+  * ad-hoc top-k query without a ranking would: one pass over the rows keeps the best k so far in a bounded
+  * heap whose root is the worst of them, O(n log k) time and O(k) space.
+  * @param table The table.
+  * @param test Tested with each live row.
+  * @param k The most rows to return.
+  * @return The selected rows in leaderboard order; fewer than k if fewer pass the test.
+  */
+ private static int[] boundedHeapTopRows(ScoreTable table, IntPredicate test, int k) {
+     int[] heap = new int[Math.max(0, Math.min(k, table.size()))];
+     int count = 0;
+     for (int row = 0; row < table.rowLimit() && heap.length > 0; row++) {
+         if (!table.isLive(row) || !test.test(row)) continue;
+         if (count < heap.length) {
+             // Filling up: sift the new row up past the rows that sort before it.
+             int child = count++;
+             while (child > 0) {
+                 int parent = (child - 1) >>> 1;
+                 if (compareRows(table, heap[parent], row) >= 0) break;
+                 heap[child] = heap[parent];
+                 child = parent;
+             }
+             heap[child] = row;
+         } else if (compareRows(table, row, heap[0]) < 0) {
+             // Better than the worst kept row: replace the root and sift the new row down.
+             int parent = 0;
+             while (true) {
+                 int child = 2 * parent + 1;
+                 if (child >= count) break;
+                 if (child + 1 < count && compareRows(table, heap[child + 1], heap[child]) > 0) child++;
+                 if (compareRows(table, heap[child], row) <= 0) break;
+                 heap[parent] = heap[child];
+                 parent = child;
+             }
+             heap[parent] = row;
+         }
+     }
+     int[] top = Arrays.copyOf(heap, count);
+     ScoreTable.sortRows(top, (a, b) -> compareRows(table, a, b));
+     return top;
+ }
+
+ /**
+  * Compares two rows of a table in leaderboard order, as the table's rankings do: score and date descending,
+  * then player name and game name ascending.
+  */
+ private static int compareRows(ScoreTable table, int a, int b) {
+     if (table.score(a) != table.score(b)) return table.score(a) > table.score(b) ? -1 : 1;
+     if (table.epochDay(a) != table.epochDay(b)) return table.epochDay(a) > table.epochDay(b) ? -1 : 1;
+     if (table.playerId(a) != table.playerId(b)) {
+         return ScoreEntry.PLAYER_NAMES.nameOf(table.playerId(a)).compareTo(ScoreEntry.PLAYER_NAMES.nameOf(table.playerId(b)));
+     }
+     if (table.gameId(a) == table.gameId(b)) return 0;
+     return ScoreEntry.GAME_NAMES.nameOf(table.gameId(a)).compareTo(ScoreEntry.GAME_NAMES.nameOf(table.gameId(b)));
+ }
+
+ /**
+  * The heap in use after a few full collections.
+  */
+ private static long usedHeap() {
+     Runtime runtime = Runtime.getRuntime();
+     for (int i = 0; i < 3; i++) System.gc();
+     return runtime.totalMemory() - runtime.freeMemory();
+ }
+
+ /**
+  * A score entry as it was stored before names were dictionary-encoded, for the footprint baseline.
+  */
+ private static class LegacyEntry {
+     final String name;
+     final int score;
+     final LocalDate date;
+     final String gameName;
+
+     LegacyEntry(String name, int score, LocalDate date, String gameName) {
+         this.name = name;
+         this.score = score;
+         this.date = date;
+         this.gameName = gameName;
+     }
+ }
+
+ /**
+  * Runs concurrent submitters against a fresh log in each durability mode. Every submitter waits for
+  * its own record to commit before submitting the next one, like a client waiting for an acknowledgement.
+  * @param records Total number of records per mode.
+  * @throws IOException If a temporary log cannot be created.
+  */
+ static void commit(int records) throws IOException {
+     int submitters = 8;
+     System.out.printf("commit: %,d records, %d concurrent submitters%n", records, submitters);
+     for (WriteBehindPersister.Durability durability : WriteBehindPersister.Durability.values()) {
+         File logFile = File.createTempFile("scores-bench", ".log");
+         File sealedFile = new File(logFile.getPath() + ".sealed");
+         ScoreLog log = new ScoreLog(logFile);
+         log.open();
+         // A compactor that never triggers, so only commit costs are measured.
+         ShardedSnapshot unusedSnapshot = new ShardedSnapshot(new File(logFile.getPath() + ".d"), SnapshotFormat.TEXT, false);
+         WriteBehindPersister persister = new WriteBehindPersister(log, new ScoreCompactor(unusedSnapshot, sealedFile) {
+             @Override
+             public boolean shouldCompact(ScoreLog scoreLog, int liveEntries) {
+                 return false;
+             }
+         }, sealedFile, durability, e -> e.printStackTrace());
+         persister.start(0);
+
+         long[] latencies = new long[records];
+         int perSubmitter = records / submitters;
+         Thread[] threads = new Thread[submitters];
+         long start = System.nanoTime();
+         for (int t = 0; t < submitters; t++) {
+             int submitter = t;
+             threads[t] = new Thread(() -> {
+                 for (int i = 0; i < perSubmitter; i++) {
+                     int index = submitter * perSubmitter + i;
+                     ScoreEntry entry = new ScoreEntry("Player" + index, index, LocalDate.now(), "Game" + submitter);
+                     long submitted = System.nanoTime();
+                     long ticket = persister.submit(LogRecord.put(entry), index);
+                     persister.awaitCommit(ticket, 60_000);
+                     latencies[index] = System.nanoTime() - submitted;
+                 }
+             });
+             threads[t].start();
+         }
+         for (Thread thread : threads) {
+             try {
+                 thread.join();
+             } catch (InterruptedException e) {
+                 Thread.currentThread().interrupt();
+             }
+         }
+         long elapsed = System.nanoTime() - start;
+         persister.close();
+
+         long[] measured = Arrays.copyOf(latencies, perSubmitter * submitters);
+         Arrays.sort(measured);
+         System.out.printf("  %-11s %,12.0f records/s   latency p50 %,9.1f us   p99 %,9.1f us%n",
+                 durability, measured.length / (elapsed / 1e9),
+                 measured[measured.length / 2] / 1e3, measured[(int) (measured.length * 0.99)] / 1e3);
+         Files.deleteIfExists(logFile.toPath());
+     }
+ }
+
+ /**
+  * Writes a text score file with a realistic mix of repeated player and game names.
+  * @param file The file to write.
+  * @param lines Number of lines.
+  * @throws IOException If writing fails.
+  */
+ static void writeSyntheticTextFile(File file, int lines) throws IOException {
+     int games = 50;
+     int players = Math.max(1, lines / games); // Every player/game pair appears about once.
+     Random random = new Random(42);
+     long firstDay = LocalDate.of(2020, 1, 1).toEpochDay();
+     try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16))) {
+         for (int i = 0; i < lines; i++) {
+             writer.print("Player");
+             writer.print(random.nextInt(players));
+             writer.print(',');
+             writer.print(random.nextInt(100_000));
+             writer.print(',');
+             writer.print(LocalDate.ofEpochDay(firstDay + random.nextInt(2000)));
+             writer.print(",Game");
+             writer.println(random.nextInt(games));
+         }
+     }
+ }
+
+ /**
+  * The original line-by-line parser, kept here as the baseline for comparison.
+  */
+ static void readWithBufferedReader(File file, Consumer<ScoreEntry> onEntry) throws IOException {
+     try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+         String line;
+         while ((line = reader.readLine()) != null) {
+             String[] parts = line.split(",", 4);
+             if (parts.length != 4) continue;
+             try {
+                 int scoreVal = Math.max(0, Integer.parseInt(parts[1].trim()));
+                 onEntry.accept(new ScoreEntry(parts[0].trim(), scoreVal, LocalDate.parse(parts[2].trim()), parts[3].trim()));
+             } catch (Exception ex) {
+                 // Malformed lines are skipped, as in the application.
+             }
+         }
+     }
+ }
+
+ /**
+  * A benchmark body that returns a result (so the work cannot be optimized away).
+  */
+ interface Body {
+     long run() throws IOException;
+ }
+
+ /**
+  * Runs a body ROUNDS times and prints the best time and throughput.
+  * @param label Name of the variant.
+  * @param items Items processed per run (for the per-second figure).
+  * @param body The work to time.
+  * @throws IOException If the body fails.
+  */
+ static void report(String label, long items, Body body) throws IOException {
+     long best = Long.MAX_VALUE;
+     long result = 0;
+     for (int round = 0; round < ROUNDS; round++) {
+         System.gc();
+         long start = System.nanoTime();
+         result = body.run();
+         best = Math.min(best, System.nanoTime() - start);
+     }
+     System.out.printf("  %-28s %,10.1f ms  %,14.0f items/s  (result %,d)%n",
+             label, best / 1e6, items / (best / 1e9), result);
+ }
+}
\ No newline at end of file